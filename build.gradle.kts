@@ -10,6 +10,24 @@ plugins {
 
 apply(plugin = "io.spring.dependency-management")
 
+// benchmarks live in src/jmh and only run on demand: gradle jmh -Pjmh.args="RenderBenchmark -p dpi=300"
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+// the load test in src/loadTest drives the boot jar and reuses the benchmark corpus: gradle loadTest -Pload.clients=16
+val loadTest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + jmh.output
+    runtimeClasspath += sourceSets.main.get().output + jmh.output
+}
+
+configurations[loadTest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[loadTest.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
 repositories {
     mavenLocal()
     maven {
@@ -20,11 +38,17 @@ repositories {
 dependencies {
     implementation(libs.org.springframework.boot.spring.boot.starter)
     implementation(libs.org.springframework.boot.spring.boot.starter.web)
+    implementation(libs.org.springframework.boot.spring.boot.starter.actuator)
+    runtimeOnly(libs.io.micrometer.micrometer.registry.prometheus)
     implementation(libs.org.apache.pdfbox.pdfbox)
     implementation(libs.net.sourceforge.tess4j.tess4j)
     implementation(libs.com.fasterxml.jackson.core)
     implementation(libs.software.amazon.awssdk.s3)
+    implementation(libs.software.amazon.awssdk.netty.nio.client)
+    implementation(libs.software.amazon.awssdk.apache.client)
     testImplementation(libs.org.springframework.boot.spring.boot.starter.test)
+    "jmhImplementation"(libs.org.openjdk.jmh.jmh.core)
+    "jmhAnnotationProcessor"(libs.org.openjdk.jmh.jmh.generator.annprocess)
 }
 
 group = "com.nassiesse.ocr"
@@ -43,6 +67,55 @@ tasks.withType<Test> {
     useJUnitPlatform();
 }
 
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks in src/jmh, options go in -Pjmh.args"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    args((findProperty("jmh.args") as String? ?: "").split(" ").filter { it.isNotBlank() })
+    args("-rf", "json", "-rff", results.path)
+    // generated documents are kept between runs
+    systemProperty("corpus.dir", layout.buildDirectory.dir("jmh-corpus").get().asFile.path)
+    doFirst { results.parentFile.mkdirs() }
+}
+
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the boot jar against a local S3 stand-in under load, fails if a -Pload.* threshold is missed"
+    dependsOn(tasks.bootJar)
+    classpath = loadTest.runtimeClasspath
+    mainClass.set("com.nassiesse.ocr.service.LoadTest")
+    systemProperty("load.jar", tasks.bootJar.get().archiveFile.get().asFile.path)
+    systemProperty("load.report", layout.buildDirectory.file("reports/loadtest/results.json").get().asFile.path)
+    systemProperty("corpus.dir", layout.buildDirectory.dir("jmh-corpus").get().asFile.path)
+    project.properties.filterKeys { it.startsWith("load.") }.forEach { (key, value) -> systemProperty(key, value.toString()) }
+}
+
+// AppCDS archive of the classes loaded while the context starts, for replicas that are ready in seconds:
+// gradle cdsArchive, then java -XX:SharedArchiveFile=build/cds/application.jsa -jar build/cds/<jar name>
+val cds = layout.buildDirectory.dir("cds")
+
+val cdsExtract by tasks.registering(JavaExec::class) {
+    group = "build"
+    description = "Extracts the boot jar into build/cds, the layout the CDS archive is made for"
+    dependsOn(tasks.bootJar)
+    classpath = files(tasks.bootJar.flatMap { it.archiveFile })
+    mainClass.set("org.springframework.boot.loader.launch.JarLauncher")
+    jvmArgs("-Djarmode=tools")
+    args("extract", "--force", "--destination", cds.get().asFile.path)
+}
+
+tasks.register<JavaExec>("cdsArchive") {
+    group = "build"
+    description = "Starts the extracted application once, stopping after the context refresh, and archives the loaded classes"
+    dependsOn(cdsExtract)
+    classpath = files(cds.map { it.file(tasks.bootJar.get().archiveFileName.get()) })
+    mainClass.set("com.nassiesse.ocr.OcrApplication")
+    jvmArgs("-XX:ArchiveClassesAtExit=" + cds.get().file("application.jsa").asFile.path,
+        "-Dspring.context.exit=onRefresh")
+}
+
 tasks.named<org.springframework.boot.gradle.tasks.run.BootRun>("bootRun") {
     mainClass.set("com.nassiesse.ocr.SimpleOcrMicroserviceApplication")
 }
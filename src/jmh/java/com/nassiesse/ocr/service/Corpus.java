@@ -0,0 +1,160 @@
+package com.nassiesse.ocr.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generated benchmark documents, kept in the directory given by the {@code corpus.dir} system property
+ * so they are only generated once.
+ */
+public final class Corpus {
+    private static final String[] WORDS = ("invoice total amount payable within thirty days of receipt the quick "
+            + "brown fox jumps over lazy dog order number customer account delivery address reference").split(" ");
+    private static final int SCAN_DPI = 300;
+
+    // public for the parameter setters JMH generates in another package
+    public enum Kind {
+        /** born-digital pages, all text */
+        TEXT,
+        /** one full page scan per page, no text layer */
+        SCANNED,
+        /** a text header above a scanned body */
+        MIXED,
+        /** full page scans turned by two degrees, with specks and a dark border along two edges */
+        SKEWED
+    }
+
+    private Corpus() {
+    }
+
+    static File get(Kind kind, int pages) throws IOException {
+        final File dir = new File(System.getProperty("corpus.dir",
+                new File(System.getProperty("java.io.tmpdir"), "ocr-jmh-corpus").getPath()));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        final File file = new File(dir, kind.name().toLowerCase(Locale.ROOT) + "-" + pages + ".pdf");
+        if (!file.exists()) {
+            final File temp = new File(dir, file.getName() + ".part");
+            generate(kind, pages, temp);
+            if (!temp.renameTo(file)) {
+                throw new IOException("Can't move " + temp + " to " + file);
+            }
+        }
+        return file;
+    }
+
+    private static void generate(Kind kind, int pages, File file) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < pages; i++) {
+                // seeded per page, so every page differs and nothing is served from a cache
+                final Random random = new Random(i);
+                final PDPage page = new PDPage(PDRectangle.LETTER);
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    switch (kind) {
+                        case TEXT -> text(content, random, 740, 55);
+                        case SCANNED -> scan(document, content, random, 0, false);
+                        case MIXED -> {
+                            text(content, random, 740, 8);
+                            scan(document, content, random, 0.3f, false);
+                        }
+                        case SKEWED -> scan(document, content, random, 0, true);
+                    }
+                }
+            }
+            document.save(file);
+        }
+    }
+
+    private static void text(PDPageContentStream content, Random random, float top, int lines) throws IOException {
+        content.beginText();
+        content.setFont(PDType1Font.HELVETICA, 10);
+        content.setLeading(12);
+        content.newLineAtOffset(54, top);
+        for (int i = 0; i < lines; i++) {
+            content.showText(line(random));
+            content.newLine();
+        }
+        content.endText();
+    }
+
+    /**
+     * The text on page {@code page} of a {@link Kind#SCANNED} or {@link Kind#SKEWED} document, to check
+     * OCR results against.
+     */
+    static String scannedText(int page) {
+        final Random random = new Random(page);
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < scanLines(PDRectangle.LETTER.getHeight()); i++) {
+            text.append(line(random)).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * How many lines fit a scan {@code height} points high, leaving two lines at the top and one at the bottom.
+     */
+    private static int scanLines(float height) {
+        final int leading = 12 * SCAN_DPI / 72;
+        return Math.max(0, (Math.round(height / 72 * SCAN_DPI) - 2 * leading - 1) / leading);
+    }
+
+    /**
+     * Draw a scanned text block covering the page below {@code headerShare} of its height.
+     */
+    private static void scan(PDDocument document, PDPageContentStream content, Random random, float headerShare,
+                             boolean skewed) throws IOException {
+        final PDRectangle box = PDRectangle.LETTER;
+        final float height = box.getHeight() * (1 - headerShare);
+        final BufferedImage image = new BufferedImage(Math.round(box.getWidth() / 72 * SCAN_DPI),
+                Math.round(height / 72 * SCAN_DPI), BufferedImage.TYPE_BYTE_BINARY);
+        final Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setColor(Color.BLACK);
+            if (skewed) {
+                graphics.fillRect(0, 0, image.getWidth(), SCAN_DPI / 8);
+                graphics.fillRect(0, 0, SCAN_DPI / 8, image.getHeight());
+                // specks of dust, from their own seed so the text stays the same as in SCANNED
+                final Random dust = new Random(0);
+                for (int i = 0; i < 2000; i++) {
+                    graphics.fillRect(dust.nextInt(image.getWidth()), dust.nextInt(image.getHeight()), 1 + dust.nextInt(3), 1 + dust.nextInt(3));
+                }
+                graphics.rotate(Math.toRadians(2), image.getWidth() / 2.0, image.getHeight() / 2.0);
+            }
+            // 10pt at the scan resolution
+            graphics.setFont(new Font(Font.SERIF, Font.PLAIN, 10 * SCAN_DPI / 72));
+            final int leading = 12 * SCAN_DPI / 72;
+            for (int i = 0; i < scanLines(height); i++) {
+                graphics.drawString(line(random), SCAN_DPI * 3 / 4, (i + 2) * leading);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        // bilevel and CCITT G4 compressed, like most document scanners produce
+        content.drawImage(CCITTFactory.createFromImage(document, image), 0, 0, box.getWidth(), height);
+    }
+
+    private static String line(Random random) {
+        final StringBuilder line = new StringBuilder();
+        while (line.length() < 80) {
+            line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return line.toString().trim();
+    }
+}
@@ -0,0 +1,73 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.OcrApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end {@link OCRService#extractTextFromPDF(File)} with the application's own configuration, the
+ * result caches turned off. Settings can be overridden with system properties, e.g.
+ * {@code -jvmArgsAppend -Dtesseract.workerPoolSize=4} in the JMH options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"TEXT", "SCANNED", "MIXED"})
+    Corpus.Kind kind;
+
+    @Param({"1", "50", "500"})
+    int pages;
+
+    private ConfigurableApplicationContext context;
+    private OCRService service;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Corpus.get(kind, pages);
+        // S3 isn't used, but the client won't build without a region
+        if (System.getProperty("aws.region") == null && System.getenv("AWS_REGION") == null) {
+            System.setProperty("aws.region", "us-east-1");
+        }
+        context = new SpringApplicationBuilder(OcrApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("cache.enabled=false",
+                        "cache.pagesEnabled=false",
+                        "jobs.directory=" + Files.createTempDirectory("ocr-jmh-jobs"))
+                .run();
+        service = context.getBean(OCRService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int extract() throws IOException {
+        return service.extractTextFromPDF(file).text().length();
+    }
+}
@@ -0,0 +1,63 @@
+package com.nassiesse.ocr.service;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code PDDocument.load} of a file with the different ways PDFBox can buffer the parsed document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"TEXT", "SCANNED", "MIXED"})
+    Corpus.Kind kind;
+
+    @Param({"1", "50", "500"})
+    int pages;
+
+    @Param({"MAIN_MEMORY", "TEMP_FILE", "MIXED_64MB"})
+    String memory;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Corpus.get(kind, pages);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        try (PDDocument document = PDDocument.load(file, setting())) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    private MemoryUsageSetting setting() {
+        return switch (memory) {
+            case "MAIN_MEMORY" -> MemoryUsageSetting.setupMainMemoryOnly();
+            case "TEMP_FILE" -> MemoryUsageSetting.setupTempFileOnly();
+            case "MIXED_64MB" -> MemoryUsageSetting.setupMixed(64L * 1024 * 1024);
+            default -> throw new IllegalArgumentException(memory);
+        };
+    }
+}
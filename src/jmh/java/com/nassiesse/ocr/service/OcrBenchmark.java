@@ -0,0 +1,70 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.TesseractProperties;
+import net.sourceforge.tess4j.TesseractException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OCR of one rendered page, with a new engine per page ({@link OCRService#newTesseractInstance}) and
+ * with an engine kept warm the way {@link TesseractPool} does. Needs the traineddata in the directory
+ * given by the {@code tesseract.dataPath} system property.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class OcrBenchmark {
+
+    @Param({"200", "300"})
+    int dpi;
+
+    private TesseractProperties properties;
+    private BufferedImage image;
+    private PooledTesseract pooled;
+
+    @Setup
+    public void setUp() throws IOException {
+        properties = new TesseractProperties();
+        properties.setDataPath(System.getProperty("tesseract.dataPath", "/usr/share/tessdata"));
+        properties.setDpi(dpi);
+        try (PDDocument document = PDDocument.load(Corpus.get(Corpus.Kind.SCANNED, 1))) {
+            image = new PDFRenderer(document).renderImageWithDPI(0, dpi, ImageType.GRAY);
+        }
+        pooled = TesseractPool.EngineKey.of(properties).configure(new PooledTesseract());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pooled.close();
+    }
+
+    @Benchmark
+    public String newEngine() throws TesseractException {
+        return OCRService.newTesseractInstance(properties).doOCR(image);
+    }
+
+    @Benchmark
+    public String pooledEngine() throws TesseractException {
+        return pooled.doOCR(image);
+    }
+}
@@ -0,0 +1,54 @@
+package com.nassiesse.ocr.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PNG encoding of a rendered page with {@link OCRService#toFile(BufferedImage)}, what spilling a page
+ * to disk costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PngBenchmark {
+
+    @Param({"150", "300"})
+    int dpi;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (PDDocument document = PDDocument.load(Corpus.get(Corpus.Kind.SCANNED, 1))) {
+            image = new PDFRenderer(document).renderImageWithDPI(0, dpi, ImageType.GRAY);
+        }
+    }
+
+    @Benchmark
+    public long toFile() throws IOException {
+        final File file = OCRService.toFile(image);
+        final long length = file.length();
+        file.delete();
+        return length;
+    }
+}
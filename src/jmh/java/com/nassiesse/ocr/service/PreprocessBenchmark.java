@@ -0,0 +1,144 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.PreprocessProperties;
+import com.nassiesse.ocr.TesseractProperties;
+import net.sourceforge.tess4j.TesseractException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering and OCR of one page at the configured 300 DPI as it is, and at the DPI {@link ImagePreprocessor}
+ * picks followed by its deskew, crop and binarisation. {@code prepare} measures everything but the OCR and
+ * runs without traineddata; {@code page} needs it in the directory given by the {@code tesseract.dataPath}
+ * system property, and prints the word accuracy of the last run against the page's known text at tear down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class PreprocessBenchmark {
+
+    @Param({"test", "scanned", "skewed"})
+    String sample;
+
+    @Param({"fixed", "preprocessed"})
+    String mode;
+
+    private PDDocument document;
+    private ImagePreprocessor preprocessor;
+    private PooledTesseract pooled;
+    private String expected;
+    private String recognised;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = switch (sample) {
+            case "test" -> {
+                try (InputStream in = PreprocessBenchmark.class.getResourceAsStream("/test.pdf")) {
+                    yield PDDocument.load(in);
+                }
+            }
+            case "scanned" -> PDDocument.load(Corpus.get(Corpus.Kind.SCANNED, 1));
+            case "skewed" -> PDDocument.load(Corpus.get(Corpus.Kind.SKEWED, 1));
+            default -> throw new IllegalArgumentException(sample);
+        };
+        if ("test".equals(sample)) {
+            final PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(1);
+            stripper.setEndPage(1);
+            expected = stripper.getText(document);
+        } else {
+            expected = Corpus.scannedText(0);
+        }
+        preprocessor = new ImagePreprocessor(new PreprocessProperties());
+        final TesseractProperties properties = new TesseractProperties();
+        properties.setDataPath(System.getProperty("tesseract.dataPath", "/usr/share/tessdata"));
+        pooled = TesseractPool.EngineKey.of(properties).configure(new PooledTesseract());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (recognised != null) {
+            System.out.printf(Locale.ROOT, "%n%s/%s word accuracy: %.3f%n", sample, mode, accuracy(expected, recognised));
+        }
+        pooled.close();
+        document.close();
+    }
+
+    @Benchmark
+    public BufferedImage prepare() throws IOException {
+        return image().image();
+    }
+
+    @Benchmark
+    public String page() throws IOException, TesseractException {
+        final PageClassifier.PageImage page = image();
+        recognised = pooled.recognize(page.image(), page.placement().dpi(), new ArrayList<>());
+        return recognised;
+    }
+
+    private PageClassifier.PageImage image() throws IOException {
+        final boolean preprocessed = "preprocessed".equals(mode);
+        final int dpi = preprocessed ? preprocessor.dpi(document, 0, 300) : 300;
+        final PageClassifier.PageImage page = new PageClassifier.PageImage(
+                new PDFRenderer(document).renderImageWithDPI(0, dpi, ImageType.GRAY), Layout.Placement.page(dpi));
+        return preprocessed ? preprocessor.apply(page) : page;
+    }
+
+    /**
+     * The share of the expected words found in order in the recognised text: their longest common
+     * subsequence over the number of expected words.
+     */
+    static double accuracy(String expected, String recognised) {
+        final List<String> want = words(expected);
+        final List<String> got = words(recognised);
+        if (want.isEmpty()) {
+            return 1;
+        }
+        int[] previous = new int[got.size() + 1];
+        int[] current = new int[got.size() + 1];
+        for (String word : want) {
+            for (int j = 1; j <= got.size(); j++) {
+                current[j] = word.equals(got.get(j - 1)) ? previous[j - 1] + 1 : Math.max(previous[j], current[j - 1]);
+            }
+            final int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return (double) previous[got.size()] / want.size();
+    }
+
+    private static List<String> words(String text) {
+        final List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
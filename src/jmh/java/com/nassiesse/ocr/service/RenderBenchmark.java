@@ -0,0 +1,59 @@
+package com.nassiesse.ocr.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code PDFRenderer.renderImageWithDPI} of a single page at the resolutions worth considering for
+ * tesseract.dpi.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"TEXT", "SCANNED", "MIXED"})
+    Corpus.Kind kind;
+
+    @Param({"150", "200", "300", "400"})
+    int dpi;
+
+    private PDDocument document;
+    private PDFRenderer renderer;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = PDDocument.load(Corpus.get(kind, 1));
+        renderer = new PDFRenderer(document);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    @Benchmark
+    public BufferedImage render() throws IOException {
+        return renderer.renderImageWithDPI(0, dpi, ImageType.GRAY);
+    }
+}
@@ -0,0 +1,60 @@
+package com.nassiesse.ocr.service;
+
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Splitter.split} into single page documents, the baseline for reading pages straight from the
+ * loaded document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitBenchmark {
+
+    @Param({"TEXT", "SCANNED", "MIXED"})
+    Corpus.Kind kind;
+
+    @Param({"1", "50", "500"})
+    int pages;
+
+    private PDDocument document;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = PDDocument.load(Corpus.get(kind, pages));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    @Benchmark
+    public int split() throws IOException {
+        final List<PDDocument> parts = new Splitter().split(document);
+        for (PDDocument part : parts) {
+            part.close();
+        }
+        return parts.size();
+    }
+}
@@ -0,0 +1,69 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.ClassifierProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code PDFTextStripper.getText} of a whole loaded document, and the page classification that wraps it
+ * in the service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextStripBenchmark {
+
+    @Param({"TEXT", "SCANNED", "MIXED"})
+    Corpus.Kind kind;
+
+    @Param({"1", "50"})
+    int pages;
+
+    private PDDocument document;
+    private PageClassifier classifier;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = PDDocument.load(Corpus.get(kind, pages));
+        classifier = new PageClassifier(new ClassifierProperties());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    @Benchmark
+    public int getText() throws IOException {
+        return new PDFTextStripper().getText(document).length();
+    }
+
+    @Benchmark
+    public int classify() throws IOException {
+        int ocr = 0;
+        for (int i = 0; i < document.getNumberOfPages(); i++) {
+            if (classifier.classify(document, i).strategy() != PageClassifier.Strategy.TEXT) {
+                ocr++;
+            }
+        }
+        return ocr;
+    }
+}
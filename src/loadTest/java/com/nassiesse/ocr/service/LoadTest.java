@@ -0,0 +1,354 @@
+package com.nassiesse.ocr.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Starts the boot jar against a {@link LocalS3}, drives a mix of upload and S3 requests for generated
+ * {@link Corpus} documents from concurrent clients and reports throughput, latency percentiles, the peak
+ * resident memory of the service and the peak size of its temp files. Fails if a threshold is missed, so
+ * a scheduler or memory change can be checked on a laptop before it ships.
+ * <p>
+ * Everything is set with system properties, which {@code gradle loadTest} passes on from {@code -Pload.*}:
+ * <ul>
+ *     <li>{@code load.duration}, {@code load.warmUp}: ISO durations of the measured run and of the
+ *     unmeasured traffic before it, default {@code PT60S} and {@code PT10S}</li>
+ *     <li>{@code load.clients}: concurrent clients, default 8</li>
+ *     <li>{@code load.s3Share}: share of requests that go through S3 rather than uploads, default 0.5</li>
+ *     <li>{@code load.corpus}: documents as {@code kind:pages} pairs, default {@code text:5,mixed:2,scanned:2};
+ *     scanned and mixed pages need Tesseract and its traineddata</li>
+ *     <li>{@code load.heap}: maximum heap of the service, default {@code 2048m} as in docker-compose</li>
+ *     <li>{@code load.appArgs}: more arguments for the service, default {@code --cache.enabled=false} so
+ *     repeated documents aren't served from the cache</li>
+ *     <li>{@code load.minThroughput} (requests/s), {@code load.maxP95Millis}, {@code load.maxP99Millis},
+ *     {@code load.maxRssMb}, {@code load.maxTempDiskMb}: thresholds, unchecked when not set</li>
+ *     <li>{@code load.maxErrorRate}: share of requests that may fail, default 0.01; requests turned away
+ *     as busy count separately and don't fail the run</li>
+ * </ul>
+ */
+public final class LoadTest {
+    private static final String BUCKET = "load";
+    private static final Duration READY_TIMEOUT = Duration.ofMinutes(2);
+    private static final long SAMPLE_MILLIS = 250;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final Map<String, byte[]> documents = new LinkedHashMap<>();
+    private final Map<String, Latencies> latencies = new LinkedHashMap<>();
+    private final AtomicLong busy = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong peakRss = new AtomicLong();
+    private final AtomicLong peakTempDisk = new AtomicLong();
+    private volatile boolean measuring;
+    private String baseUrl;
+
+    private LoadTest() {
+        latencies.put("upload", new Latencies());
+        latencies.put("s3", new Latencies());
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new LoadTest().run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        final Path report = Path.of(System.getProperty("load.report", "build/reports/loadtest/results.json"));
+        Files.createDirectories(report.getParent());
+        final Path work = Files.createTempDirectory("ocr-load");
+        try (LocalS3 s3 = new LocalS3(BUCKET)) {
+            for (String entry : System.getProperty("load.corpus", "text:5,mixed:2,scanned:2").split(",")) {
+                final String[] parts = entry.strip().split(":");
+                final File file = Corpus.get(Corpus.Kind.valueOf(parts[0].toUpperCase(Locale.ROOT)), Integer.parseInt(parts[1]));
+                documents.put(file.getName(), Files.readAllBytes(file.toPath()));
+                s3.put(file.getName(), file.toPath());
+            }
+            final Process app = start(s3, work, report.resolveSibling("app.log"));
+            try (ScheduledExecutorService samplers = Executors.newSingleThreadScheduledExecutor()) {
+                samplers.scheduleAtFixedRate(() -> sample(app, work), 0, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+                awaitReady(app);
+                drive(Duration.parse(System.getProperty("load.warmUp", "PT10S")));
+                measuring = true;
+                final long started = System.nanoTime();
+                drive(Duration.parse(System.getProperty("load.duration", "PT60S")));
+                final double seconds = (System.nanoTime() - started) / 1e9;
+                measuring = false;
+                samplers.shutdownNow();
+                sample(app, work);
+                return report(report, seconds);
+            } finally {
+                stop(app);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(work)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private Process start(LocalS3 s3, Path work, Path log) throws IOException {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        baseUrl = "http://127.0.0.1:" + port;
+        final List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx" + System.getProperty("load.heap", "2048m"),
+                "-Djava.io.tmpdir=" + Files.createDirectories(work.resolve("tmp")),
+                "-jar", System.getProperty("load.jar"),
+                "--server.port=" + port,
+                "--s3.endpoint=" + s3.endpoint(),
+                "--s3.region=us-east-1",
+                "--s3.pathStyleAccess=true",
+                "--cache.directory=" + work.resolve("tmp/cache"),
+                "--jobs.directory=" + work.resolve("tmp/jobs")));
+        command.addAll(Arrays.asList(System.getProperty("load.appArgs", "--cache.enabled=false").split(" ")));
+        final ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile());
+        builder.environment().put("AWS_ACCESS_KEY_ID", "load");
+        builder.environment().put("AWS_SECRET_ACCESS_KEY", "load");
+        builder.environment().put("AWS_REGION", "us-east-1");
+        System.out.println("Starting " + String.join(" ", command) + ", log in " + log);
+        return builder.start();
+    }
+
+    private void awaitReady(Process app) throws IOException, InterruptedException {
+        final long deadline = System.nanoTime() + READY_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!app.isAlive()) {
+                throw new IllegalStateException("Service exited with " + app.exitValue() + " before it was ready");
+            }
+            try {
+                final HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health/readiness"))
+                        .build(), HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Service wasn't ready within " + READY_TIMEOUT);
+    }
+
+    /**
+     * Run the clients for {@code duration}, each sending its next request as soon as the last one is answered.
+     */
+    private void drive(Duration duration) throws InterruptedException {
+        final int clients = Integer.getInteger("load.clients", 8);
+        final double s3Share = Double.parseDouble(System.getProperty("load.s3Share", "0.5"));
+        final long end = System.nanoTime() + duration.toNanos();
+        final List<String> keys = List.copyOf(documents.keySet());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                // seeded per client, so runs send the same mix
+                final Random random = new Random(i);
+                executor.execute(() -> {
+                    while (System.nanoTime() < end) {
+                        final String key = keys.get(random.nextInt(keys.size()));
+                        send(random.nextDouble() < s3Share ? "s3" : "upload", key);
+                    }
+                });
+            }
+        }
+    }
+
+    private void send(String type, String key) {
+        final HttpRequest request = type.equals("s3")
+                ? HttpRequest.newBuilder(URI.create(baseUrl + "/api/pdf/aws/" + BUCKET + "?key=" + key)).build()
+                : upload(key);
+        final long started = System.nanoTime();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!measuring) {
+            return;
+        }
+        if (status == 200) {
+            latencies.get(type).add(System.nanoTime() - started);
+        } else if (status == 429) {
+            busy.incrementAndGet();
+        } else {
+            errors.incrementAndGet();
+        }
+    }
+
+    private HttpRequest upload(String key) {
+        final String boundary = "load-" + Long.toHexString(System.nanoTime());
+        final byte[] head = ("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + key
+                + "\"\r\nContent-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        final byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/pdf/extractText"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, documents.get(key), tail)))
+                .build();
+    }
+
+    private void sample(Process app, Path work) {
+        peakRss.accumulateAndGet(rssBytes(app.pid()), Math::max);
+        try (Stream<Path> files = Files.walk(work.resolve("tmp"))) {
+            peakTempDisk.accumulateAndGet(files.mapToLong(file -> file.toFile().length()).sum(), Math::max);
+        } catch (IOException | RuntimeException e) {
+            // files come and go while they're listed
+        }
+    }
+
+    /**
+     * Resident memory of the process: its high-water mark where {@code /proc} has one, what {@code ps}
+     * reports otherwise.
+     */
+    private static long rssBytes(long pid) {
+        try {
+            final Path status = Path.of("/proc", Long.toString(pid), "status");
+            if (Files.exists(status)) {
+                for (String line : Files.readAllLines(status)) {
+                    if (line.startsWith("VmHWM:")) {
+                        return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                    }
+                }
+            }
+            final Process ps = new ProcessBuilder("ps", "-o", "rss=", "-p", Long.toString(pid)).start();
+            final String out = new String(ps.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).strip();
+            return out.isEmpty() ? 0 : Long.parseLong(out) * 1024;
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void stop(Process app) throws InterruptedException {
+        app.destroy();
+        if (!app.waitFor(30, TimeUnit.SECONDS)) {
+            app.destroyForcibly();
+        }
+    }
+
+    private boolean report(Path report, double seconds) throws IOException {
+        final Latencies all = new Latencies();
+        final Map<String, Object> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Latencies> entry : latencies.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().summary(seconds));
+            all.addAll(entry.getValue());
+        }
+        final Map<String, Object> total = all.summary(seconds);
+        results.put("all", total);
+        final long requests = all.count() + busy.get() + errors.get();
+        final double errorRate = requests == 0 ? 0 : (double) errors.get() / requests;
+        results.put("busy", busy.get());
+        results.put("errors", errors.get());
+        results.put("errorRate", errorRate);
+        results.put("peakRssMb", peakRss.get() / (1024 * 1024));
+        results.put("peakTempDiskMb", peakTempDisk.get() / (1024 * 1024));
+
+        final List<String> missed = new ArrayList<>();
+        check(missed, "load.minThroughput", (double) total.get("throughput"), true);
+        check(missed, "load.maxP95Millis", (double) total.get("p95Millis"), false);
+        check(missed, "load.maxP99Millis", (double) total.get("p99Millis"), false);
+        check(missed, "load.maxRssMb", peakRss.get() / (1024.0 * 1024), false);
+        check(missed, "load.maxTempDiskMb", peakTempDisk.get() / (1024.0 * 1024), false);
+        if (errorRate > Double.parseDouble(System.getProperty("load.maxErrorRate", "0.01"))) {
+            missed.add("error rate " + String.format(Locale.ROOT, "%.3f", errorRate) + " above load.maxErrorRate");
+        }
+        if (all.count() == 0) {
+            missed.add("no request succeeded");
+        }
+        results.put("missed", missed);
+
+        final String json = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(results);
+        Files.writeString(report, json);
+        System.out.println(json);
+        System.out.println(missed.isEmpty() ? "All thresholds met" : "Missed: " + String.join("; ", missed));
+        return missed.isEmpty();
+    }
+
+    private static void check(List<String> missed, String property, double value, boolean minimum) {
+        final String limit = System.getProperty(property);
+        if (limit == null || limit.isBlank()) {
+            return;
+        }
+        final double threshold = Double.parseDouble(limit);
+        if (minimum ? value < threshold : value > threshold) {
+            missed.add(String.format(Locale.ROOT, "%.1f %s %s %s", value, minimum ? "below" : "above", property, limit));
+        }
+    }
+
+    /**
+     * Latencies of successful requests, in nanoseconds.
+     */
+    private static final class Latencies {
+        private long[] values = new long[1024];
+        private int count;
+
+        synchronized void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+        }
+
+        synchronized void addAll(Latencies other) {
+            for (long value : other.sorted()) {
+                add(value);
+            }
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized long[] sorted() {
+            final long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        Map<String, Object> summary(double seconds) {
+            final long[] sorted = sorted();
+            final Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("requests", sorted.length);
+            summary.put("throughput", sorted.length / seconds);
+            summary.put("p50Millis", percentile(sorted, 0.50));
+            summary.put("p95Millis", percentile(sorted, 0.95));
+            summary.put("p99Millis", percentile(sorted, 0.99));
+            summary.put("maxMillis", percentile(sorted, 1));
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
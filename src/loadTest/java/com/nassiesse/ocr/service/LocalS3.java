@@ -0,0 +1,104 @@
+package com.nassiesse.ocr.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A path style S3 stand-in serving files for HEAD and GET object requests, with single byte ranges, so the
+ * service's S3 path can be loaded without a network or credentials. Objects are {@code /<bucket>/<key>}.
+ */
+final class LocalS3 implements AutoCloseable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private final HttpServer server;
+    private final String bucket;
+    private final Map<String, Path> objects = new ConcurrentHashMap<>();
+
+    LocalS3(String bucket) throws IOException {
+        this.bucket = bucket;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        // the service downloads large objects in parallel ranges
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    void put(String key, Path file) {
+        objects.put(key, file);
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String prefix = "/" + bucket + "/";
+            final String path = exchange.getRequestURI().getPath();
+            final Path file = path.startsWith(prefix) ? objects.get(path.substring(prefix.length())) : null;
+            if (file == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final long size = Files.size(file);
+            // stable per object, as the service keys its caches on it
+            exchange.getResponseHeaders().set("ETag", "\"" + HexFormat.of().toHexDigits(file.hashCode() ^ size) + "\"");
+            exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", Long.toString(size));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            long first = 0;
+            long last = size - 1;
+            int status = 200;
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                final Matcher matcher = RANGE.matcher(range);
+                if (!matcher.matches()) {
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                first = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) {
+                    last = Math.min(last, Long.parseLong(matcher.group(2)));
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + size);
+            }
+            exchange.sendResponseHeaders(status, last - first + 1);
+            try (InputStream in = Files.newInputStream(file); OutputStream out = exchange.getResponseBody()) {
+                in.skipNBytes(first);
+                final byte[] buffer = new byte[64 * 1024];
+                long remaining = last - first + 1;
+                while (remaining > 0) {
+                    final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        break;
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
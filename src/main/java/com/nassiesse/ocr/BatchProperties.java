@@ -0,0 +1,43 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "batch")
+public class BatchProperties {
+    /**
+     * Most keys a batch may name; a prefix matching more keys is cut off after this many.
+     */
+    private int maxKeys = 1000;
+    /**
+     * S3 objects of one batch downloaded at the same time.
+     */
+    private int downloadConcurrency = 4;
+    /**
+     * Documents of one batch loaded at the same time, downloading or waiting for their pages.
+     */
+    private int documentsInFlight = 16;
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public int getDownloadConcurrency() {
+        return downloadConcurrency;
+    }
+
+    public void setDownloadConcurrency(int downloadConcurrency) {
+        this.downloadConcurrency = downloadConcurrency;
+    }
+
+    public int getDocumentsInFlight() {
+        return documentsInFlight;
+    }
+
+    public void setDocumentsInFlight(int documentsInFlight) {
+        this.documentsInFlight = documentsInFlight;
+    }
+}
@@ -0,0 +1,63 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.io.File;
+
+@ConfigurationProperties(prefix = "cache")
+public class CacheProperties {
+    private boolean enabled = true;
+    /**
+     * Approximate heap used by the in-memory tier, in bytes.
+     */
+    private long memoryMaxBytes = 64L * 1024 * 1024;
+    /**
+     * Directory of the on-disk tier, disabled when blank.
+     */
+    private String directory = new File(System.getProperty("java.io.tmpdir"), "ocr-cache").getPath();
+    private long diskMaxBytes = 1024L * 1024 * 1024;
+    /**
+     * Also cache OCR results of single pages, keyed by a hash of the page content.
+     */
+    private boolean pagesEnabled = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMemoryMaxBytes() {
+        return memoryMaxBytes;
+    }
+
+    public void setMemoryMaxBytes(long memoryMaxBytes) {
+        this.memoryMaxBytes = memoryMaxBytes;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public long getDiskMaxBytes() {
+        return diskMaxBytes;
+    }
+
+    public void setDiskMaxBytes(long diskMaxBytes) {
+        this.diskMaxBytes = diskMaxBytes;
+    }
+
+    public boolean isPagesEnabled() {
+        return pagesEnabled;
+    }
+
+    public void setPagesEnabled(boolean pagesEnabled) {
+        this.pagesEnabled = pagesEnabled;
+    }
+}
@@ -0,0 +1,85 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "classifier")
+public class ClassifierProperties {
+    /**
+     * Share of well-formed characters and words below which a page's text layer is treated as junk and
+     * the page is OCRed instead.
+     */
+    private double minTextQuality = 0.75;
+    /**
+     * Share of the page an image has to cover to be considered for OCR.
+     */
+    private double minImageCoverage = 0.05;
+    /**
+     * Images with fewer text layer characters per square inch over them than this are OCRed.
+     */
+    private double minCharsPerSquareInch = 5;
+    /**
+     * OCR embedded images from their own pixels instead of cropping them out of a page rendering.
+     */
+    private boolean nativeImages = true;
+    /**
+     * Embedded images with a resolution outside of this range are scaled to tesseract.dpi before OCR.
+     */
+    private int minNativeDpi = 200;
+    private int maxNativeDpi = 600;
+
+    public double getMinTextQuality() {
+        return minTextQuality;
+    }
+
+    public void setMinTextQuality(double minTextQuality) {
+        this.minTextQuality = minTextQuality;
+    }
+
+    public double getMinImageCoverage() {
+        return minImageCoverage;
+    }
+
+    public void setMinImageCoverage(double minImageCoverage) {
+        this.minImageCoverage = minImageCoverage;
+    }
+
+    public double getMinCharsPerSquareInch() {
+        return minCharsPerSquareInch;
+    }
+
+    public void setMinCharsPerSquareInch(double minCharsPerSquareInch) {
+        this.minCharsPerSquareInch = minCharsPerSquareInch;
+    }
+
+    public boolean isNativeImages() {
+        return nativeImages;
+    }
+
+    public void setNativeImages(boolean nativeImages) {
+        this.nativeImages = nativeImages;
+    }
+
+    public int getMinNativeDpi() {
+        return minNativeDpi;
+    }
+
+    public void setMinNativeDpi(int minNativeDpi) {
+        this.minNativeDpi = minNativeDpi;
+    }
+
+    public int getMaxNativeDpi() {
+        return maxNativeDpi;
+    }
+
+    public void setMaxNativeDpi(int maxNativeDpi) {
+        this.maxNativeDpi = maxNativeDpi;
+    }
+
+    /**
+     * The settings that decide between text layer and OCR and what pixels get OCRed, for cache keys.
+     */
+    public String fingerprint() {
+        return minTextQuality + "|" + minImageCoverage + '|' + minCharsPerSquareInch + '|'
+                + (nativeImages ? minNativeDpi + "-" + maxNativeDpi : "rendered");
+    }
+}
@@ -0,0 +1,71 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "document")
+public class DocumentProperties {
+    /**
+     * Uploads and S3 objects up to this size are loaded from memory, larger ones are written to a temp
+     * file and loaded from there.
+     */
+    private long inMemoryMaxBytes = 64L * 1024 * 1024;
+    /**
+     * Rendered pages are spilled to PNG files while waiting for OCR when less heap than this is free.
+     */
+    private long imageSpillFreeHeapBytes = 256L * 1024 * 1024;
+    /**
+     * Documents loaded from files or S3 keep up to their size, at most this much, of PDFBox's scratch
+     * buffers on the heap and the rest in temp files.
+     */
+    private long scratchMemoryMaxBytes = 16L * 1024 * 1024;
+    /**
+     * Heap the rasters of pages being rendered and OCRed may take up across all requests, defaults to a
+     * quarter of the maximum heap.
+     */
+    private long renderBudgetBytes = 0;
+    /**
+     * Pages that don't fit into the render budget at their DPI are rendered at a lower one, down to this;
+     * below it they wait for the budget instead.
+     */
+    private int minRenderDpi = 200;
+
+    public long getInMemoryMaxBytes() {
+        return inMemoryMaxBytes;
+    }
+
+    public void setInMemoryMaxBytes(long inMemoryMaxBytes) {
+        this.inMemoryMaxBytes = inMemoryMaxBytes;
+    }
+
+    public long getImageSpillFreeHeapBytes() {
+        return imageSpillFreeHeapBytes;
+    }
+
+    public void setImageSpillFreeHeapBytes(long imageSpillFreeHeapBytes) {
+        this.imageSpillFreeHeapBytes = imageSpillFreeHeapBytes;
+    }
+
+    public long getScratchMemoryMaxBytes() {
+        return scratchMemoryMaxBytes;
+    }
+
+    public void setScratchMemoryMaxBytes(long scratchMemoryMaxBytes) {
+        this.scratchMemoryMaxBytes = scratchMemoryMaxBytes;
+    }
+
+    public long getRenderBudgetBytes() {
+        return renderBudgetBytes > 0 ? renderBudgetBytes : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    public void setRenderBudgetBytes(long renderBudgetBytes) {
+        this.renderBudgetBytes = renderBudgetBytes;
+    }
+
+    public int getMinRenderDpi() {
+        return minRenderDpi;
+    }
+
+    public void setMinRenderDpi(int minRenderDpi) {
+        this.minRenderDpi = minRenderDpi;
+    }
+}
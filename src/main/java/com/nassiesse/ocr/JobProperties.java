@@ -0,0 +1,58 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.io.File;
+
+@ConfigurationProperties(prefix = "jobs")
+public class JobProperties {
+    /**
+     * Directory holding the input, progress and result of every job; jobs in it survive restarts.
+     */
+    private String directory = new File(System.getProperty("java.io.tmpdir"), "ocr-jobs").getPath();
+    /**
+     * Jobs processed at the same time.
+     */
+    private int workerConcurrency = 2;
+    /**
+     * Seconds to wait before retrying a job the scheduler had no room for.
+     */
+    private int busyRetrySeconds = 5;
+    /**
+     * Hours a finished or failed job, with its input and result, is kept before it is deleted; 0 keeps
+     * jobs forever.
+     */
+    private int retentionHours = 24;
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getWorkerConcurrency() {
+        return workerConcurrency;
+    }
+
+    public void setWorkerConcurrency(int workerConcurrency) {
+        this.workerConcurrency = workerConcurrency;
+    }
+
+    public int getBusyRetrySeconds() {
+        return busyRetrySeconds;
+    }
+
+    public void setBusyRetrySeconds(int busyRetrySeconds) {
+        this.busyRetrySeconds = busyRetrySeconds;
+    }
+
+    public int getRetentionHours() {
+        return retentionHours;
+    }
+
+    public void setRetentionHours(int retentionHours) {
+        this.retentionHours = retentionHours;
+    }
+}
@@ -0,0 +1,116 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "preprocess")
+public class PreprocessProperties {
+    /**
+     * Render pages that are OCRed whole at a resolution picked from the height of their text lines,
+     * between {@link #minDpi} and {@link #maxDpi}, instead of at {@code tesseract.dpi}.
+     */
+    private boolean autoDpi = true;
+    private int minDpi = 150;
+    private int maxDpi = 400;
+    /**
+     * Resolution of the quick render the text line height is measured on.
+     */
+    private int probeDpi = 100;
+    /**
+     * Height in pixels the body of a text line (capitals, without descenders) should have after rendering;
+     * 10pt text at 300 dpi is about 30 pixels.
+     */
+    private int targetLineHeightPixels = 30;
+    /**
+     * Turn the text lines of skewed scans level.
+     */
+    private boolean deskew = true;
+    private double maxSkewDegrees = 5;
+    /**
+     * Turn images black and white with Otsu's threshold before OCR.
+     */
+    private boolean binarize = true;
+    /**
+     * Cut white margins and dark scanner borders off the images.
+     */
+    private boolean cropBorders = true;
+
+    public boolean isAutoDpi() {
+        return autoDpi;
+    }
+
+    public void setAutoDpi(boolean autoDpi) {
+        this.autoDpi = autoDpi;
+    }
+
+    public int getMinDpi() {
+        return minDpi;
+    }
+
+    public void setMinDpi(int minDpi) {
+        this.minDpi = minDpi;
+    }
+
+    public int getMaxDpi() {
+        return maxDpi;
+    }
+
+    public void setMaxDpi(int maxDpi) {
+        this.maxDpi = maxDpi;
+    }
+
+    public int getProbeDpi() {
+        return probeDpi;
+    }
+
+    public void setProbeDpi(int probeDpi) {
+        this.probeDpi = probeDpi;
+    }
+
+    public int getTargetLineHeightPixels() {
+        return targetLineHeightPixels;
+    }
+
+    public void setTargetLineHeightPixels(int targetLineHeightPixels) {
+        this.targetLineHeightPixels = targetLineHeightPixels;
+    }
+
+    public boolean isDeskew() {
+        return deskew;
+    }
+
+    public void setDeskew(boolean deskew) {
+        this.deskew = deskew;
+    }
+
+    public double getMaxSkewDegrees() {
+        return maxSkewDegrees;
+    }
+
+    public void setMaxSkewDegrees(double maxSkewDegrees) {
+        this.maxSkewDegrees = maxSkewDegrees;
+    }
+
+    public boolean isBinarize() {
+        return binarize;
+    }
+
+    public void setBinarize(boolean binarize) {
+        this.binarize = binarize;
+    }
+
+    public boolean isCropBorders() {
+        return cropBorders;
+    }
+
+    public void setCropBorders(boolean cropBorders) {
+        this.cropBorders = cropBorders;
+    }
+
+    /**
+     * The settings that change OCR results, for cache keys.
+     */
+    public String fingerprint() {
+        return (autoDpi ? minDpi + "-" + maxDpi + "@" + probeDpi + "/" + targetLineHeightPixels : "fixed")
+                + '|' + (deskew ? maxSkewDegrees : 0) + '|' + binarize + '|' + cropBorders;
+    }
+}
@@ -0,0 +1,90 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "s3")
+public class S3Properties {
+    /**
+     * Endpoint of an S3 compatible store such as MinIO, empty for AWS.
+     */
+    private String endpoint = "";
+    /**
+     * Region, empty for the SDK's default lookup.
+     */
+    private String region = "";
+    /**
+     * Address buckets as {@code endpoint/bucket} instead of {@code bucket.endpoint}, usually needed with {@link #endpoint}.
+     */
+    private boolean pathStyleAccess = false;
+    /**
+     * Connections to S3 shared by all downloads.
+     */
+    private int maxConnections = 64;
+    /**
+     * Objects downloaded to a temp file are fetched in ranged GETs of this size.
+     */
+    private long partSizeBytes = 8L * 1024 * 1024;
+    /**
+     * Download throughput one object should reach; decides how many of its ranges are fetched at once,
+     * assuming about {@value #CONNECTION_MEGABYTES_PER_SECOND} MB/s per connection.
+     */
+    private double targetThroughputGbps = 5.0;
+
+    public static final int CONNECTION_MEGABYTES_PER_SECOND = 80;
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public boolean isPathStyleAccess() {
+        return pathStyleAccess;
+    }
+
+    public void setPathStyleAccess(boolean pathStyleAccess) {
+        this.pathStyleAccess = pathStyleAccess;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public long getPartSizeBytes() {
+        return partSizeBytes;
+    }
+
+    public void setPartSizeBytes(long partSizeBytes) {
+        this.partSizeBytes = partSizeBytes;
+    }
+
+    public double getTargetThroughputGbps() {
+        return targetThroughputGbps;
+    }
+
+    public void setTargetThroughputGbps(double targetThroughputGbps) {
+        this.targetThroughputGbps = targetThroughputGbps;
+    }
+
+    /**
+     * Ranges of one object fetched at once to reach {@link #targetThroughputGbps}, at most {@link #maxConnections}.
+     */
+    public int getPartsInFlight() {
+        final double megabytesPerSecond = targetThroughputGbps * 1000 / 8;
+        return (int) Math.max(1, Math.min(maxConnections, Math.ceil(megabytesPerSecond / CONNECTION_MEGABYTES_PER_SECOND)));
+    }
+}
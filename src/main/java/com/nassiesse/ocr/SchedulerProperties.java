@@ -0,0 +1,81 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "scheduler")
+public class SchedulerProperties {
+    /**
+     * Threads rendering and OCRing pages, defaults to the number of available processors.
+     */
+    private int cpuThreads = 0;
+    /**
+     * Pages admitted (queued or running) across all requests before new requests are turned away.
+     */
+    private int maxInFlightPages = 1000;
+    /**
+     * Pages of a single document in flight at once, defaults to twice the CPU threads.
+     */
+    private int pageWindow = 0;
+    /**
+     * Seconds clients are asked to wait before retrying a rejected request.
+     */
+    private int retryAfterSeconds = 5;
+    /**
+     * Seconds a page may take once a CPU worker picked it up before it is cut off and reported as timed
+     * out, 0 for no limit.
+     */
+    private int pageTimeoutSeconds = 120;
+    /**
+     * Seconds a document may take before its remaining pages are cut off and it is reported truncated, 0
+     * for no limit.
+     */
+    private int documentTimeoutSeconds = 1800;
+
+    public int getCpuThreads() {
+        return cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setCpuThreads(int cpuThreads) {
+        this.cpuThreads = cpuThreads;
+    }
+
+    public int getMaxInFlightPages() {
+        return maxInFlightPages;
+    }
+
+    public void setMaxInFlightPages(int maxInFlightPages) {
+        this.maxInFlightPages = maxInFlightPages;
+    }
+
+    public int getPageWindow() {
+        return pageWindow > 0 ? pageWindow : 2 * getCpuThreads();
+    }
+
+    public void setPageWindow(int pageWindow) {
+        this.pageWindow = pageWindow;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getPageTimeoutSeconds() {
+        return pageTimeoutSeconds;
+    }
+
+    public void setPageTimeoutSeconds(int pageTimeoutSeconds) {
+        this.pageTimeoutSeconds = pageTimeoutSeconds;
+    }
+
+    public int getDocumentTimeoutSeconds() {
+        return documentTimeoutSeconds;
+    }
+
+    public void setDocumentTimeoutSeconds(int documentTimeoutSeconds) {
+        this.documentTimeoutSeconds = documentTimeoutSeconds;
+    }
+}
@@ -0,0 +1,58 @@
+package com.nassiesse.ocr;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+
+@ConfigurationProperties(prefix = "startup")
+public class StartupProperties {
+    /**
+     * Warm up after the application has started, while the readiness probe reports it out of service,
+     * instead of before it starts.
+     */
+    private boolean background = true;
+    /**
+     * Engines initialised per language during warm-up.
+     */
+    private int engines = 1;
+    /**
+     * Languages whose engines are initialised during warm-up; {@code tesseract.language} if empty.
+     */
+    private List<String> languages = List.of();
+    /**
+     * Also extract the bundled test document, to load PDFBox's classes and fonts.
+     */
+    private boolean document = true;
+
+    public boolean isBackground() {
+        return background;
+    }
+
+    public void setBackground(boolean background) {
+        this.background = background;
+    }
+
+    public int getEngines() {
+        return engines;
+    }
+
+    public void setEngines(int engines) {
+        this.engines = engines;
+    }
+
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    public void setLanguages(List<String> languages) {
+        this.languages = languages;
+    }
+
+    public boolean isDocument() {
+        return document;
+    }
+
+    public void setDocument(boolean document) {
+        this.document = document;
+    }
+}
@@ -3,13 +3,48 @@ package com.nassiesse.ocr;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
+import java.util.List;
+
 @ConfigurationProperties(prefix = "tesseract")
 @ConfigurationPropertiesScan
 public class TesseractProperties {
     private String dataPath;
+    /**
+     * Default traineddata, e.g. {@code eng} or {@code deu+eng}; requests may ask for others, or for
+     * {@code auto} to pick one of {@link #detectLanguages} per document.
+     */
     private String language = "eng";
     private int workerPoolSize = 8;
     private int dpi = 300;
+    private int engineMaxPages = 500;
+    /**
+     * Default page segmentation mode, 0 to 13 as in {@code tesseract --psm}; -1 keeps the engine's own default.
+     */
+    private int pageSegMode = -1;
+    /**
+     * Default OCR engine mode, 0 to 3 as in {@code tesseract --oem}.
+     */
+    private int engineMode = 3;
+    /**
+     * How many languages (engine keys) may keep idle engines; the least recently used one's engines are
+     * released beyond that.
+     */
+    private int maxIdleModels = 3;
+    /**
+     * Languages {@code auto} chooses from, by OCRing the first OCR'd page of a document at
+     * {@link #detectDpi} with all of them loaded.
+     */
+    private List<String> detectLanguages = List.of("eng", "deu", "fra");
+    private int detectDpi = 150;
+    /**
+     * OCR every page in a process of its own running {@link #command} instead of in the JVM, so a crash of
+     * the native code only fails that page.
+     */
+    private boolean external = false;
+    /**
+     * The tesseract executable for {@link #external} OCR.
+     */
+    private String command = "tesseract";
 
     public String getDataPath() {
         return dataPath;
@@ -42,4 +77,68 @@ public class TesseractProperties {
     public void setDpi(int dpi) {
         this.dpi = dpi;
     }
+
+    public int getEngineMaxPages() {
+        return engineMaxPages;
+    }
+
+    public void setEngineMaxPages(int engineMaxPages) {
+        this.engineMaxPages = engineMaxPages;
+    }
+
+    public int getPageSegMode() {
+        return pageSegMode;
+    }
+
+    public void setPageSegMode(int pageSegMode) {
+        this.pageSegMode = pageSegMode;
+    }
+
+    public int getEngineMode() {
+        return engineMode;
+    }
+
+    public void setEngineMode(int engineMode) {
+        this.engineMode = engineMode;
+    }
+
+    public int getMaxIdleModels() {
+        return maxIdleModels;
+    }
+
+    public void setMaxIdleModels(int maxIdleModels) {
+        this.maxIdleModels = maxIdleModels;
+    }
+
+    public List<String> getDetectLanguages() {
+        return detectLanguages;
+    }
+
+    public void setDetectLanguages(List<String> detectLanguages) {
+        this.detectLanguages = detectLanguages;
+    }
+
+    public int getDetectDpi() {
+        return detectDpi;
+    }
+
+    public void setDetectDpi(int detectDpi) {
+        this.detectDpi = detectDpi;
+    }
+
+    public boolean isExternal() {
+        return external;
+    }
+
+    public void setExternal(boolean external) {
+        this.external = external;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
 }
@@ -0,0 +1,72 @@
+package com.nassiesse.ocr.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nassiesse.ocr.service.BatchService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+@RestController
+public class BatchController {
+	private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+
+	private final BatchService service;
+
+	public BatchController(BatchService service) {
+		this.service = service;
+	}
+
+	/**
+	 * Extract the text of many objects of {@code bucket}, given as a list of keys or as a prefix. Writes one
+	 * JSON line per document as soon as it is done, in completion order, with the key as file name; failed
+	 * documents get a line with their error. A summary line ends the response.
+	 */
+	@PostMapping(value = "/api/pdf/aws/{bucket}/batch", produces = OCRController.NDJSON)
+	public ResponseEntity<StreamingResponseBody> extractTextFromAWSPDFFiles(@PathVariable String bucket,
+																			@RequestBody BatchRequest request) {
+		final BatchService.Keys keys;
+		try {
+			keys = service.keys(bucket, request.keys(), request.prefix());
+		} catch (IllegalArgumentException e) {
+			return OCRController.plain(new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST));
+		} catch (Exception e) {
+			LOGGER.log(Level.SEVERE, e.getMessage(), e);
+			return OCRController.plain(new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR));
+		}
+		LOGGER.info("Bucket: " + bucket + ", batch of " + keys.keys().size() + " key(s)");
+		final ObjectMapper mapper = new ObjectMapper();
+		final StreamingResponseBody body = out -> {
+			try {
+				final int failed = service.run(bucket, keys.keys(), outcome -> OCRController.writeLine(mapper, out,
+						outcome.error() == null
+								? new OCRController.Result(outcome.data().text(), outcome.key(), outcome.data().pageCount(),
+										outcome.data().truncated(), outcome.data().failedPages())
+								: new KeyFailure(outcome.key(), outcome.error())));
+				OCRController.writeLine(mapper, out, new BatchSummary(keys.keys().size(), failed, keys.truncated()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Batch cancelled");
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.parseMediaType(OCRController.NDJSON)).body(body);
+	}
+
+	/**
+	 * The objects of a batch: {@code keys}, or all objects under {@code prefix} when no keys are given.
+	 */
+	record BatchRequest(List<String> keys, String prefix) {}
+
+	record KeyFailure(String fileName, String error) {}
+
+	record BatchSummary(int documents, int failed, boolean truncated) {}
+}
@@ -0,0 +1,100 @@
+package com.nassiesse.ocr.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nassiesse.ocr.service.JobService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous variant of {@link OCRController}: documents are queued as jobs and polled for, so no
+ * connection has to stay open while a large scan is processed.
+ */
+@RestController
+public class JobController {
+	private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+
+	private final JobService service;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	public JobController(JobService service) {
+		this.service = service;
+	}
+
+	/**
+	 * Queue an uploaded {@code file}, or the S3 object given by {@code bucket} and {@code key}.
+	 */
+	@PostMapping("/api/pdf/jobs")
+	public @ResponseBody ResponseEntity<String> submit(@RequestParam(value = "file", required = false) MultipartFile file,
+													   @RequestParam(value = "bucket", required = false) String bucket,
+													   @RequestParam(value = "key", required = false) String key) {
+		try {
+			final JobService.Job job;
+			if (file != null) {
+				job = service.submit(file);
+			} else if (bucket != null && key != null) {
+				job = service.submitS3(bucket, key);
+			} else {
+				return new ResponseEntity<>("Missing file or bucket and key", HttpStatus.BAD_REQUEST);
+			}
+			final HttpHeaders headers = new HttpHeaders();
+			headers.set(HttpHeaders.LOCATION, "/api/pdf/jobs/" + job.id());
+			return new ResponseEntity<>(mapper.writeValueAsString(job), headers, HttpStatus.ACCEPTED);
+		} catch (Exception e) {
+			LOGGER.log(Level.SEVERE, e.getMessage(), e);
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	@GetMapping("/api/pdf/jobs/{id}")
+	public @ResponseBody ResponseEntity<String> status(@PathVariable String id) {
+		try {
+			final Optional<JobService.Job> job = service.get(id);
+			if (job.isEmpty()) {
+				return new ResponseEntity<>("Unknown job " + id, HttpStatus.NOT_FOUND);
+			}
+			return new ResponseEntity<>(mapper.writeValueAsString(job.get()), HttpStatus.OK);
+		} catch (Exception e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * The text of a finished job, in the same format as the synchronous endpoints.
+	 */
+	@GetMapping("/api/pdf/jobs/{id}/result")
+	public @ResponseBody ResponseEntity<String> result(@PathVariable String id) {
+		try {
+			final Optional<JobService.Job> job = service.get(id);
+			if (job.isEmpty()) {
+				return new ResponseEntity<>("Unknown job " + id, HttpStatus.NOT_FOUND);
+			}
+			final Optional<Path> result = service.result(id);
+			if (result.isEmpty()) {
+				return new ResponseEntity<>("Job " + id + " is " + job.get().status(), HttpStatus.CONFLICT);
+			}
+			final String text = Files.readString(result.get(), StandardCharsets.UTF_8);
+			final String res = mapper.writeValueAsString(
+					new OCRController.Result(text, job.get().source().fileName(), job.get().pageCount(),
+							job.get().truncated(), job.get().failedPages()));
+			return new ResponseEntity<>(res, HttpStatus.OK);
+		} catch (Exception e) {
+			LOGGER.log(Level.SEVERE, e.getMessage(), e);
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+}
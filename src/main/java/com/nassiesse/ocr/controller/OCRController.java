@@ -1,8 +1,15 @@
 package com.nassiesse.ocr.controller;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nassiesse.ocr.SchedulerProperties;
+import com.nassiesse.ocr.service.ExtractionOptions;
 import com.nassiesse.ocr.service.OCRService;
+import com.nassiesse.ocr.service.PageRange;
+import com.nassiesse.ocr.service.SchedulerBusyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -11,26 +18,38 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @RestController
 public class OCRController {
 	private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+	static final String NDJSON = "application/x-ndjson";
 
 	private final OCRService service;
+	private final SchedulerProperties schedulerProperties;
 
-	public OCRController(OCRService service) {
+	public OCRController(OCRService service, SchedulerProperties schedulerProperties) {
 		this.service = service;
+		this.schedulerProperties = schedulerProperties;
 		Logger.getAnonymousLogger().info("Started controller");
 	}
 
+	/**
+	 * The text of a PDF in S3, see {@link Options} for what a request can tune.
+	 */
 	@GetMapping("/api/pdf/aws/{bucket}")
 	public @ResponseBody ResponseEntity<String>
 			extractTextFromAWSPDFFile(@PathVariable String bucket,
-								   @RequestParam("key") String key) {
+								   @RequestParam("key") String key,
+								   Options options) {
 		if (bucket == null) {
 			return new ResponseEntity<>("Missing bucket", HttpStatus.BAD_REQUEST);
 		}
@@ -39,51 +58,186 @@ public class OCRController {
 			return new ResponseEntity<>("Missing key", HttpStatus.BAD_REQUEST);
 		}
 		LOGGER.info("Bucket: " + bucket + ", key:" + key);
-		try {
-			final File pdfFile = service.getS3File(bucket, key);
-			try {
-				final OCRService.ExtractedPdfData data = service.extractTextFromPDF(pdfFile);
+		try (OCRService.Extraction extraction = service.openS3PDF(bucket, key, options.toExtractionOptions(false))) {
+			final OCRService.ExtractedPdfData data = extraction.collect();
 
-				ObjectMapper mapper = new ObjectMapper();
-				final String res = mapper.writeValueAsString(new Result(data.text(), key, data.pageCount()));
+			ObjectMapper mapper = new ObjectMapper();
+			final String res = mapper.writeValueAsString(new Result(data.text(), key, data.pageCount(), data.truncated(), data.failedPages()));
 
-				return new ResponseEntity<>(res, HttpStatus.OK);
-			} finally {
-				pdfFile.delete();
-			}
+			return new ResponseEntity<>(res, HttpStatus.OK);
+		} catch (SchedulerBusyException e) {
+			return busy(e);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
 		} catch (Exception e) {
 			LOGGER.log(Level.SEVERE, e.getMessage(), e);
 			return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
 		}
 	}
 
+	/**
+	 * The text of an uploaded PDF, see {@link Options} for what a request can tune.
+	 */
 		@PostMapping("/api/pdf/extractText")
     public @ResponseBody ResponseEntity<String> 
-					extractTextFromPDFFile(@RequestParam("file") MultipartFile file) {
+					extractTextFromPDFFile(@RequestParam("file") MultipartFile file, Options options) {
 		LOGGER.info("extractText called");
-		try {
-			final File pdfFile = OCRService.toFile(file.getBytes());
-			try {
-				final OCRService.ExtractedPdfData data = service.extractTextFromPDF(pdfFile);
+		try (OCRService.Extraction extraction = service.openPDF(file, options.toExtractionOptions(false))) {
+			final OCRService.ExtractedPdfData data = extraction.collect();
 
-				ObjectMapper mapper = new ObjectMapper();
-				final String res = mapper.writeValueAsString(new Result(data.text(), file.getOriginalFilename(), data.pageCount()));
+			ObjectMapper mapper = new ObjectMapper();
+			final String res = mapper.writeValueAsString(new Result(data.text(), file.getOriginalFilename(), data.pageCount(), data.truncated(),
+					data.failedPages()));
 
-				return new ResponseEntity<>(res, HttpStatus.OK);
-			} finally {
-				pdfFile.delete();
-			}
+			return new ResponseEntity<>(res, HttpStatus.OK);
+		} catch (SchedulerBusyException e) {
+			return busy(e);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
 		} catch (Exception e) {
 			return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
 		}
 	}
+
+	private ResponseEntity<String> busy(SchedulerBusyException e) {
+		LOGGER.warning(e.getMessage());
+		final HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, Integer.toString(schedulerProperties.getRetryAfterSeconds()));
+		return new ResponseEntity<>(e.getMessage(), headers, HttpStatus.TOO_MANY_REQUESTS);
+	}
 	
+	/**
+	 * Same as {@link #extractTextFromAWSPDFFile}, but writes one JSON line per page as soon
+	 * as it and all earlier pages are done, followed by a summary line. With {@code layout=true} the page
+	 * lines also carry the boxes and confidences of their OCR'd lines and words.
+	 */
+	@GetMapping(value = "/api/pdf/aws/{bucket}", produces = NDJSON)
+	public ResponseEntity<StreamingResponseBody> streamTextFromAWSPDFFile(@PathVariable String bucket,
+																		  @RequestParam("key") String key,
+																		  Options options) {
+		LOGGER.info("Bucket: " + bucket + ", key:" + key + " (streaming)");
+		try {
+			return stream(service.openS3PDF(bucket, key, options.toExtractionOptions(true)), key);
+		} catch (SchedulerBusyException e) {
+			return plain(busy(e));
+		} catch (IllegalArgumentException e) {
+			return plain(new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST));
+		} catch (Exception e) {
+			LOGGER.log(Level.SEVERE, e.getMessage(), e);
+			return plain(new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR));
+		}
+	}
+
+	/**
+	 * Same as {@link #extractTextFromPDFFile}, but writes one JSON line per page as soon as
+	 * it and all earlier pages are done, followed by a summary line. With {@code layout=true} the page
+	 * lines also carry the boxes and confidences of their OCR'd lines and words.
+	 */
+	@PostMapping(value = "/api/pdf/extractText", produces = NDJSON)
+	public ResponseEntity<StreamingResponseBody> streamTextFromPDFFile(@RequestParam("file") MultipartFile file,
+																	   Options options) {
+		LOGGER.info("extractText called (streaming)");
+		try {
+			return stream(service.openPDF(file, options.toExtractionOptions(true)), file.getOriginalFilename());
+		} catch (SchedulerBusyException e) {
+			return plain(busy(e));
+		} catch (IllegalArgumentException e) {
+			return plain(new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST));
+		} catch (Exception e) {
+			return plain(new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR));
+		}
+	}
+
+	private ResponseEntity<StreamingResponseBody> stream(OCRService.Extraction extraction, String fileName) {
+		final ObjectMapper mapper = new ObjectMapper();
+		final StreamingResponseBody body = out -> {
+			try (extraction) {
+				extraction.run(page -> writeLine(mapper, out, page));
+				writeLine(mapper, out, new Summary(fileName, extraction.getPageCount(), extraction.isTruncated(),
+						extraction.getFailedPages().size()));
+			} catch (RuntimeException e) {
+				// the status line is already out, so report the failure in-band
+				LOGGER.log(Level.SEVERE, e.getMessage(), e);
+				writeLine(mapper, out, new Failure(e.getMessage()));
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+	}
+
+	/**
+	 * Error responses of the streaming endpoints, sent as plain text like the non-streaming ones.
+	 */
+	static ResponseEntity<StreamingResponseBody> plain(ResponseEntity<String> response) {
+		final byte[] message = String.valueOf(response.getBody()).getBytes(StandardCharsets.UTF_8);
+		return ResponseEntity.status(response.getStatusCode())
+				.headers(response.getHeaders())
+				.contentType(MediaType.TEXT_PLAIN)
+				.body(out -> out.write(message));
+	}
+
+	static void writeLine(ObjectMapper mapper, OutputStream out, Object value) throws IOException {
+		out.write(mapper.writeValueAsBytes(value));
+		out.write('\n');
+		out.flush();
+	}
+
 	@GetMapping("/api/pdf/ping")
     public ResponseEntity<String> get()
     {
 		return new ResponseEntity<>("PONG", HttpStatus.OK);
     }
 
-	record Result(String text, String fileName, int pageCount) {}
+	/**
+	 * Query parameters that tune a single extraction.
+	 *
+	 * @param layout    line and word boxes in the page lines of the streaming endpoints; rejected by the
+	 *                  others, which have no page lines to put them in
+	 * @param language  traineddata to OCR with instead of the configured one, e.g. {@code deu+eng}, or
+	 *                  {@code auto} to detect it
+	 * @param psm       Tesseract page segmentation mode
+	 * @param oem       Tesseract OCR engine mode
+	 * @param pages     one based pages to extract, e.g. {@code 1-3,7,10-}
+	 * @param maxPages  extract at most this many pages
+	 * @param maxChars  stop after the page that brings the text to this many characters
+	 * @param timeBudget stop once the document took this long, an ISO duration such as {@code PT10S}
+	 */
+	record Options(Boolean layout, String language, Integer psm, Integer oem, String pages, Integer maxPages,
+				   Integer maxChars, Duration timeBudget) {
+
+		/**
+		 * @throws IllegalArgumentException if the page range or a limit is invalid, or layout is asked for
+		 *                                  without streaming
+		 */
+		ExtractionOptions toExtractionOptions(boolean streaming) {
+			if (!streaming && Boolean.TRUE.equals(layout)) {
+				throw new IllegalArgumentException("layout=true needs Accept: " + NDJSON);
+			}
+			return new ExtractionOptions(Boolean.TRUE.equals(layout), language, psm, oem,
+					new ExtractionOptions.Limits(pages == null ? null : PageRange.parse(pages),
+							maxPages == null ? 0 : maxPages, maxChars == null ? 0 : maxChars, timeBudget));
+		}
+	}
+
+	/**
+	 * @param truncated   whether extraction stopped at {@code maxPages}, {@code maxChars}, {@code timeBudget}
+	 *                    or the document timeout with pages left; only written when set
+	 * @param failedPages the pages that failed or timed out, with their status and error; only written if
+	 *                    there are any
+	 */
+	record Result(String text, String fileName, int pageCount,
+				  @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean truncated,
+				  @JsonInclude(JsonInclude.Include.NON_EMPTY) List<OCRService.PageText> failedPages) {
+		Result(String text, String fileName, int pageCount) {
+			this(text, fileName, pageCount, false, List.of());
+		}
+	}
+
+	/**
+	 * @param failedPages how many of the page lines before it have a status other than ok
+	 */
+	record Summary(String fileName, int pageCount, @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean truncated,
+				   @JsonInclude(JsonInclude.Include.NON_DEFAULT) int failedPages) {}
+
+	record Failure(String error) {}
 }
 
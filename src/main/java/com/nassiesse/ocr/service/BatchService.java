@@ -0,0 +1,158 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.BatchProperties;
+import com.nassiesse.ocr.SchedulerProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Extracts many S3 objects of one bucket in one request.
+ * <p>
+ * Up to {@link BatchProperties#getDownloadConcurrency()} objects are downloaded while the pages of
+ * earlier ones are processed, and up to {@link BatchProperties#getDocumentsInFlight()} documents have
+ * their pages in the shared {@link OcrScheduler} queue at once, so small documents keep all CPU threads
+ * busy. Results are handed back in the order documents finish; a failing key doesn't stop the batch.
+ */
+@Service
+public class BatchService {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+
+    private final Opener opener;
+    private final Lister lister;
+    private final BatchProperties properties;
+    private final SchedulerProperties schedulerProperties;
+
+    @Autowired
+    public BatchService(OCRService service, BatchProperties properties, SchedulerProperties schedulerProperties) {
+        this(service::openS3PDF, service::listS3Keys, properties, schedulerProperties);
+    }
+
+    BatchService(Opener opener, Lister lister, BatchProperties properties, SchedulerProperties schedulerProperties) {
+        this.opener = opener;
+        this.lister = lister;
+        this.properties = properties;
+        this.schedulerProperties = schedulerProperties;
+    }
+
+    @FunctionalInterface
+    interface Opener {
+        OCRService.Extraction open(String bucket, String key) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Lister {
+        List<String> list(String bucket, String prefix, int max) throws IOException;
+    }
+
+    /**
+     * Receives the outcome of each document of a batch, on the thread that called {@link #run}.
+     */
+    @FunctionalInterface
+    public interface OutcomeConsumer {
+        void accept(Outcome outcome) throws IOException;
+    }
+
+    /**
+     * The text of one document, or why it failed.
+     */
+    public record Outcome(String key, OCRService.ExtractedPdfData data, String error) {
+    }
+
+    /**
+     * The keys of a batch: the given ones, or those under {@code prefix} when no keys are given.
+     *
+     * @throws IllegalArgumentException if neither or too many keys are given
+     */
+    public Keys keys(String bucket, List<String> keys, String prefix) throws IOException {
+        if (keys != null && !keys.isEmpty()) {
+            if (keys.size() > properties.getMaxKeys()) {
+                throw new IllegalArgumentException("Too many keys: " + keys.size() + " > " + properties.getMaxKeys());
+            }
+            return new Keys(List.copyOf(keys), false);
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException("Missing keys or prefix");
+        }
+        final List<String> listed = lister.list(bucket, prefix, properties.getMaxKeys() + 1);
+        final boolean truncated = listed.size() > properties.getMaxKeys();
+        return new Keys(truncated ? listed.subList(0, properties.getMaxKeys()) : listed, truncated);
+    }
+
+    public record Keys(List<String> keys, boolean truncated) {
+    }
+
+    /**
+     * Extract all {@code keys}, handing each outcome to {@code consumer} as soon as its document is done.
+     * When the consumer throws, e.g. because the client went away, the remaining documents are cancelled.
+     *
+     * @return the number of failed documents
+     */
+    public int run(String bucket, List<String> keys, OutcomeConsumer consumer) throws IOException, InterruptedException {
+        final BlockingQueue<Outcome> done = new LinkedBlockingQueue<>();
+        final Semaphore documents = new Semaphore(properties.getDocumentsInFlight());
+        final Semaphore downloads = new Semaphore(properties.getDownloadConcurrency());
+        int failed = 0;
+        // the tasks mostly wait for a download or for their pages, so a virtual thread per key is enough
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String key : keys) {
+                executor.execute(() -> done.add(process(bucket, key, documents, downloads)));
+            }
+            try {
+                for (int i = 0; i < keys.size(); i++) {
+                    final Outcome outcome = done.take();
+                    if (outcome.error() != null) {
+                        failed++;
+                    }
+                    consumer.accept(outcome);
+                }
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                executor.shutdownNow();
+                throw e;
+            }
+        }
+        LOGGER.info("Batch of " + keys.size() + " document(s) done, " + failed + " failed");
+        return failed;
+    }
+
+    private Outcome process(String bucket, String key, Semaphore documents, Semaphore downloads) {
+        try {
+            documents.acquire();
+            try (OCRService.Extraction extraction = open(bucket, key, downloads)) {
+                return new Outcome(key, extraction.collect(), null);
+            } finally {
+                documents.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Outcome(key, null, "Cancelled");
+        } catch (Exception | LinkageError e) {
+            LOGGER.log(Level.WARNING, "Batch document " + key + " failed", e);
+            return new Outcome(key, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private OCRService.Extraction open(String bucket, String key, Semaphore downloads) throws IOException, InterruptedException {
+        while (true) {
+            downloads.acquire();
+            try {
+                return opener.open(bucket, key);
+            } catch (SchedulerBusyException e) {
+                // the batch's own documents fill the queue, wait for them instead of failing the key
+                LOGGER.info("Scheduler busy, retrying " + key + " in " + schedulerProperties.getRetryAfterSeconds() + "s");
+            } finally {
+                downloads.release();
+            }
+            Thread.sleep(schedulerProperties.getRetryAfterSeconds() * 1000L);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.TesseractProperties;
+import net.sourceforge.tess4j.TesseractException;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@code tesseract} command line tool on page images, for {@link TesseractProperties#isExternal()}.
+ * <p>
+ * Every image is OCRed in a process of its own, so a crash in the native code fails that page instead of
+ * the JVM, and a page past its {@link PageDeadline} is killed rather than waited for. That costs loading
+ * the traineddata for every image, which the engines of {@link TesseractPool} avoid. At most
+ * {@link TesseractProperties#getWorkerPoolSize()} processes run at once.
+ * <p>
+ * Text, lines and words all come from the tool's TSV output: the words of a line joined by spaces, a line
+ * per line and an empty line between paragraphs, as Tesseract writes its plain text.
+ */
+@Component
+public class ExternalTesseract {
+    // how often a running process is checked against its deadline
+    private static final long POLL_MILLIS = 100;
+    private static final int WORD_LEVEL = 5;
+    private static final int LINE_LEVEL = 4;
+
+    private final TesseractProperties properties;
+    private final Semaphore processes;
+
+    public ExternalTesseract(TesseractProperties properties) {
+        this.properties = properties;
+        this.processes = new Semaphore(properties.getWorkerPoolSize());
+    }
+
+    /**
+     * The text of {@code image}, whose resolution is {@code dpi}, adding its line and word boxes, in pixels
+     * of the image, to {@code lines} unless that's {@code null}.
+     *
+     * @throws java.util.concurrent.CancellationException if the deadline's extraction was stopped
+     * @throws InterruptedIOException                     if the deadline passed
+     * @throws TesseractException                         if the tool failed
+     */
+    String recognize(BufferedImage image, int dpi, String language, int pageSegMode, int engineMode,
+                     List<Layout.Line> lines, PageDeadline deadline) throws IOException, TesseractException {
+        final Path directory = Files.createTempDirectory("tesseract");
+        try {
+            final File input = directory.resolve("page.png").toFile();
+            ImageIO.write(image, "png", input);
+            final List<String> command = new ArrayList<>(List.of(properties.getCommand(), input.getPath(),
+                    directory.resolve("page").toString(), "-l", language, "--oem", Integer.toString(engineMode),
+                    "--dpi", Integer.toString(dpi)));
+            if (pageSegMode >= 0) {
+                command.addAll(List.of("--psm", Integer.toString(pageSegMode)));
+            }
+            if (properties.getDataPath() != null) {
+                command.addAll(List.of("--tessdata-dir", properties.getDataPath()));
+            }
+            command.add("tsv");
+            run(command, directory.resolve("page.log"), deadline);
+            return parseTsv(Files.readString(directory.resolve("page.tsv"), StandardCharsets.UTF_8), lines);
+        } finally {
+            try (var files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private void run(List<String> command, Path log, PageDeadline deadline) throws IOException, TesseractException {
+        try {
+            processes.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a tesseract process");
+        }
+        try {
+            deadline.check();
+            final Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(log.toFile())
+                    .start();
+            try {
+                while (!process.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (deadline.isExpired()) {
+                        process.destroyForcibly();
+                        deadline.check();
+                    }
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for tesseract");
+            }
+            if (process.exitValue() != 0) {
+                final List<String> output = Files.readAllLines(log, StandardCharsets.UTF_8);
+                throw new TesseractException(command.get(0) + " exited with " + process.exitValue()
+                        + (output.isEmpty() ? "" : ": " + output.get(output.size() - 1)));
+            }
+        } finally {
+            processes.release();
+        }
+    }
+
+    /**
+     * The text of Tesseract's TSV output, adding its lines to {@code lines} unless that's {@code null}.
+     */
+    static String parseTsv(String tsv, List<Layout.Line> lines) {
+        final TsvPage page = new TsvPage(lines);
+        for (String row : tsv.split("\r?\n")) {
+            // level, page, block, paragraph, line, word, left, top, width, height, confidence, text
+            final String[] columns = row.split("\t", 12);
+            if (columns.length < 11 || !Character.isDigit(columns[0].charAt(0))) {
+                continue;
+            }
+            final int level = Integer.parseInt(columns[0]);
+            final int[] box = {Integer.parseInt(columns[6]), Integer.parseInt(columns[7]),
+                    Integer.parseInt(columns[8]), Integer.parseInt(columns[9])};
+            if (level < LINE_LEVEL) {
+                page.endLine();
+                page.paragraph = true;
+            } else if (level == LINE_LEVEL) {
+                page.endLine();
+                page.box = box;
+            } else if (level == WORD_LEVEL && columns.length == 12 && !columns[11].isBlank()) {
+                page.word(columns[11].strip(), box, Math.round(Float.parseFloat(columns[10])));
+            }
+        }
+        page.endLine();
+        return page.text.toString();
+    }
+
+    /**
+     * A page being read from TSV rows.
+     */
+    private static final class TsvPage {
+        private final StringBuilder text = new StringBuilder();
+        private final List<Layout.Line> lines;
+        private final StringBuilder line = new StringBuilder();
+        private List<Layout.Word> words = new ArrayList<>();
+        private int[] box;
+        private boolean paragraph;
+
+        private TsvPage(List<Layout.Line> lines) {
+            this.lines = lines;
+        }
+
+        private void word(String word, int[] box, int confidence) {
+            if (!line.isEmpty()) {
+                line.append(' ');
+            }
+            line.append(word);
+            words.add(new Layout.Word(word, box[0], box[1], box[2], box[3], confidence));
+        }
+
+        private void endLine() {
+            if (words.isEmpty()) {
+                return;
+            }
+            if (paragraph && !text.isEmpty()) {
+                text.append('\n');
+            }
+            paragraph = false;
+            text.append(line).append('\n');
+            if (lines != null && box != null) {
+                final int confidence = (int) Math.round(words.stream().mapToInt(Layout.Word::confidence).average().orElse(0));
+                lines.add(new Layout.Line(box[0], box[1], box[2], box[3], confidence, words));
+            }
+            line.setLength(0);
+            words = new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.nassiesse.ocr.service;
+
+import java.time.Duration;
+
+/**
+ * What a caller wants from one extraction, on top of the service wide settings.
+ *
+ * @param layout      also report the line and word boxes of OCR'd text, see {@link Layout}; such runs don't
+ *                    read cached text, which has no boxes, but still fill the caches
+ * @param language    traineddata to OCR with, e.g. {@code deu} or {@code deu+eng}, or {@link #AUTO} to detect
+ *                    it per document; {@code null} for {@code tesseract.language}
+ * @param pageSegMode page segmentation mode as in {@code tesseract --psm}; {@code null} for
+ *                    {@code tesseract.pageSegMode}
+ * @param engineMode  OCR engine mode as in {@code tesseract --oem}; {@code null} for {@code tesseract.engineMode}
+ * @param limits      which pages to extract and when to stop early
+ */
+public record ExtractionOptions(boolean layout, String language, Integer pageSegMode, Integer engineMode, Limits limits) {
+    public static final String AUTO = "auto";
+    public static final ExtractionOptions DEFAULT = new ExtractionOptions(false);
+
+    public ExtractionOptions(boolean layout) {
+        this(layout, null, null, null);
+    }
+
+    public ExtractionOptions(boolean layout, String language, Integer pageSegMode, Integer engineMode) {
+        this(layout, language, pageSegMode, engineMode, Limits.NONE);
+    }
+
+    /**
+     * Limits of a partial extraction. An extraction that stops at {@code maxPages}, {@code maxChars} or
+     * {@code timeBudget} with pages left reports itself truncated; pages left out by {@code pages} don't
+     * count as truncation, they're never loaded.
+     *
+     * @param pages      the pages to extract, {@code null} for all
+     * @param maxPages   extract at most this many of them, 0 for no limit
+     * @param maxChars   stop after the page that brings the text to this many characters, 0 for no limit
+     * @param timeBudget stop once extracting took this long, dropping the pages still running; {@code null}
+     *                   for no limit
+     */
+    public record Limits(PageRange pages, int maxPages, int maxChars, Duration timeBudget) {
+        public static final Limits NONE = new Limits(null, 0, 0, null);
+
+        public Limits {
+            if (maxPages < 0 || maxChars < 0 || timeBudget != null && (timeBudget.isNegative() || timeBudget.isZero())) {
+                throw new IllegalArgumentException("Limits must be positive");
+            }
+        }
+
+        boolean includes(int index) {
+            return pages == null || pages.contains(index);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.PreprocessProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.springframework.stereotype.Component;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoublePredicate;
+import java.util.logging.Logger;
+
+/**
+ * Prepares images for Tesseract: picks the render resolution of a page from the height of its text
+ * lines, and levels skewed text, cuts off margins and scanner borders and binarises in one pass over
+ * the pixels.
+ * <p>
+ * All analysis reads the grey bytes behind the image directly, on a grid of about
+ * {@value #ANALYSIS_WIDTH} samples across, and the result is written straight into the pixel array of the
+ * one image it produces. Tesseract gets fewer, cleaner pixels, which is what its run time depends on.
+ */
+@Component
+public class ImagePreprocessor {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+    // samples across the width when estimating threshold, skew and borders
+    private static final int ANALYSIS_WIDTH = 600;
+    // paper and ink closer in grey level than this means there is no text to separate
+    private static final int MIN_CONTRAST = 48;
+    // rows with less ink than this share of an average inked row are gaps between text lines
+    private static final double GAP_INK_SHARE = 0.15;
+    // rows and columns with less ink than this at the edges are margin, with more than this they are scanner border
+    private static final double EMPTY_INK_SHARE = 0.005;
+    private static final double BORDER_INK_SHARE = 0.5;
+    // white left around the content, Tesseract finds lines touching the edge less reliably
+    private static final int MARGIN_PIXELS = 16;
+    // skews below this aren't worth resampling for
+    private static final double MIN_SKEW_DEGREES = 0.1;
+
+    private final PreprocessProperties properties;
+
+    public ImagePreprocessor(PreprocessProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * The resolution to render a page at so that its text lines come out
+     * {@link PreprocessProperties#getTargetLineHeightPixels()} high, or {@code dpi} if that can't be
+     * told. Not thread safe with respect to the document, the caller holds its lock.
+     */
+    int dpi(PDDocument document, int pageIndex, int dpi) throws IOException {
+        return dpi(document, pageIndex, dpi, PageDeadline.NONE);
+    }
+
+    /**
+     * Like {@link #dpi(PDDocument, int, int)}, giving up rendering the probe once {@code deadline} expires.
+     */
+    int dpi(PDDocument document, int pageIndex, int dpi, PageDeadline deadline) throws IOException {
+        if (!properties.isAutoDpi()) {
+            return dpi;
+        }
+        final BufferedImage probe = deadline.renderer(document).renderImageWithDPI(pageIndex, properties.getProbeDpi(), ImageType.GRAY);
+        final double lineHeight = lineHeight(Gray.of(probe));
+        if (Double.isNaN(lineHeight)) {
+            return dpi;
+        }
+        final double wanted = properties.getTargetLineHeightPixels() * properties.getProbeDpi() / lineHeight;
+        final int picked = (int) Math.round(Math.max(properties.getMinDpi(), Math.min(properties.getMaxDpi(), wanted)) / 10) * 10;
+        LOGGER.info("Page " + pageIndex + ": text lines " + String.format("%.1f", lineHeight) + " pixels high at "
+                + properties.getProbeDpi() + " dpi, rendering at " + picked + " dpi");
+        return picked;
+    }
+
+    List<PageClassifier.PageImage> apply(List<PageClassifier.PageImage> images) {
+        final List<PageClassifier.PageImage> prepared = new ArrayList<>(images.size());
+        for (PageClassifier.PageImage image : images) {
+            prepared.add(apply(image));
+        }
+        return prepared;
+    }
+
+    /**
+     * Deskew, crop and binarise an image as configured, with its placement following along so word
+     * boxes still land on the page. Returns the image as is when there is nothing to do.
+     */
+    PageClassifier.PageImage apply(PageClassifier.PageImage page) {
+        if (!properties.isBinarize() && !properties.isDeskew() && !properties.isCropBorders()) {
+            return page;
+        }
+        final Gray gray = Gray.of(page.image());
+        final int threshold = threshold(gray);
+        if (threshold < 0) {
+            return page;
+        }
+        final double skew = properties.isDeskew() ? skew(gray, threshold, properties.getMaxSkewDegrees()) : 0;
+        final Rectangle full = new Rectangle(gray.width(), gray.height());
+        final Rectangle content = properties.isCropBorders() ? content(gray, threshold) : full;
+        if (!properties.isBinarize() && skew == 0 && content.equals(full)) {
+            return page;
+        }
+
+        final int width = content.width;
+        final int height = content.height;
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        final byte[] out = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        final int cut = properties.isBinarize() ? threshold : 0;
+        // output pixel o comes from source pixel content centre + R(skew) (o - output centre)
+        final AffineTransform transform = new AffineTransform();
+        transform.translate(content.getCenterX(), content.getCenterY());
+        transform.rotate(Math.toRadians(skew));
+        transform.translate(-width / 2.0, -height / 2.0);
+        if (skew == 0) {
+            for (int y = 0; y < height; y++) {
+                int source = gray.index(content.x, content.y + y);
+                int target = y * width;
+                for (int x = 0; x < width; x++) {
+                    out[target++] = level(gray.data()[source++] & 0xFF, cut);
+                }
+            }
+        } else {
+            final double cos = transform.getScaleX();
+            final double sin = transform.getShearY();
+            for (int y = 0; y < height; y++) {
+                // source position of the centre of the row's first pixel, then one step along the row per pixel
+                double sx = transform.getTranslateX() + 0.5 * cos - (y + 0.5) * sin;
+                double sy = transform.getTranslateY() + 0.5 * sin + (y + 0.5) * cos;
+                int target = y * width;
+                for (int x = 0; x < width; x++, sx += cos, sy += sin) {
+                    final int ix = (int) Math.floor(sx);
+                    final int iy = (int) Math.floor(sy);
+                    final boolean inside = ix >= 0 && iy >= 0 && ix < gray.width() && iy < gray.height();
+                    out[target++] = inside ? level(gray.data()[gray.index(ix, iy)] & 0xFF, cut) : (byte) 0xFF;
+                }
+            }
+        }
+        LOGGER.info("Preprocessed " + gray.width() + "x" + gray.height() + " image to " + width + "x" + height
+                + ", skew " + String.format("%.2f", skew) + " degrees, threshold " + threshold);
+        return new PageClassifier.PageImage(image, page.placement().then(transform));
+    }
+
+    private static byte level(int value, int threshold) {
+        if (threshold == 0) {
+            return (byte) value;
+        }
+        return value < threshold ? 0 : (byte) 0xFF;
+    }
+
+    /**
+     * Otsu's threshold: grey levels below it are ink. -1 when paper and ink can't be told apart, e.g. on
+     * a blank page.
+     */
+    static int threshold(Gray gray) {
+        final int step = gray.step();
+        final long[] histogram = new long[256];
+        long count = 0;
+        for (int y = 0; y < gray.height(); y += step) {
+            int index = gray.index(0, y);
+            for (int x = 0; x < gray.width(); x += step, index += step) {
+                histogram[gray.data()[index] & 0xFF]++;
+                count++;
+            }
+        }
+        long sum = 0;
+        for (int i = 0; i < 256; i++) {
+            sum += i * histogram[i];
+        }
+        long darkCount = 0;
+        long darkSum = 0;
+        double best = -1;
+        int low = -1;
+        int high = -1;
+        double contrast = 0;
+        for (int t = 0; t < 255; t++) {
+            darkCount += histogram[t];
+            darkSum += t * histogram[t];
+            final long lightCount = count - darkCount;
+            if (darkCount == 0 || lightCount == 0) {
+                continue;
+            }
+            final double darkMean = (double) darkSum / darkCount;
+            final double lightMean = (double) (sum - darkSum) / lightCount;
+            final double between = (double) darkCount * lightCount * (lightMean - darkMean) * (lightMean - darkMean);
+            if (between > best) {
+                best = between;
+                low = t;
+                high = t;
+                contrast = lightMean - darkMean;
+            } else if (between == best) {
+                // no grey levels in between, e.g. in a bilevel scan, so split the gap
+                high = t;
+            }
+        }
+        return contrast < MIN_CONTRAST ? -1 : (low + high) / 2 + 1;
+    }
+
+    /**
+     * Median height in pixels of the text lines of an image, measured from the rows with a fair share
+     * of ink, so mostly capitals without descenders. NaN with fewer than three lines.
+     */
+    static double lineHeight(Gray gray) {
+        final int threshold = threshold(gray);
+        if (threshold < 0) {
+            return Double.NaN;
+        }
+        final int[] ink = new int[gray.height()];
+        long total = 0;
+        int inked = 0;
+        for (int y = 0; y < gray.height(); y++) {
+            int index = gray.index(0, y);
+            for (int x = 0; x < gray.width(); x++) {
+                if ((gray.data()[index++] & 0xFF) < threshold) {
+                    ink[y]++;
+                }
+            }
+            if (ink[y] > 0) {
+                total += ink[y];
+                inked++;
+            }
+        }
+        if (inked == 0) {
+            return Double.NaN;
+        }
+        final double gap = GAP_INK_SHARE * total / inked;
+        final List<Integer> lines = new ArrayList<>();
+        int start = -1;
+        for (int y = 0; y <= gray.height(); y++) {
+            final boolean text = y < gray.height() && ink[y] > gap;
+            if (text && start < 0) {
+                start = y;
+            } else if (!text && start >= 0) {
+                // thinner runs are rules or specks
+                if (y - start >= 3) {
+                    lines.add(y - start);
+                }
+                start = -1;
+            }
+        }
+        if (lines.size() < 3) {
+            return Double.NaN;
+        }
+        lines.sort(null);
+        return lines.get(lines.size() / 2);
+    }
+
+    /**
+     * Angle in degrees by which text lines descend to the right, within {@code maxDegrees}, found as the
+     * angle whose projection of the ink on the vertical axis has the sharpest peaks. 0 when the lines are
+     * level or there aren't enough of them to tell.
+     */
+    static double skew(Gray gray, int threshold, double maxDegrees) {
+        final int step = gray.step();
+        int count = 0;
+        int[] xs = new int[1024];
+        int[] ys = new int[1024];
+        for (int y = 0; y < gray.height(); y += step) {
+            int index = gray.index(0, y);
+            for (int x = 0; x < gray.width(); x += step, index += step) {
+                if ((gray.data()[index] & 0xFF) < threshold) {
+                    if (count == xs.length) {
+                        xs = Arrays.copyOf(xs, count * 2);
+                        ys = Arrays.copyOf(ys, count * 2);
+                    }
+                    xs[count] = x;
+                    ys[count] = y;
+                    count++;
+                }
+            }
+        }
+        if (count < 100) {
+            return 0;
+        }
+        final long[] bins = new long[(gray.width() + gray.height()) / step * 2 + 4];
+        final long level = score(xs, ys, count, 0, step, bins);
+        double best = 0;
+        long bestScore = level;
+        for (double angle = -maxDegrees; angle <= maxDegrees; angle += 0.5) {
+            final long score = score(xs, ys, count, angle, step, bins);
+            if (score > bestScore) {
+                best = angle;
+                bestScore = score;
+            }
+        }
+        final double coarse = best;
+        for (double angle = coarse - 0.5; angle <= coarse + 0.5; angle += 0.05) {
+            final long score = score(xs, ys, count, angle, step, bins);
+            if (score > bestScore) {
+                best = angle;
+                bestScore = score;
+            }
+        }
+        // a barely sharper profile is noise rather than skew
+        if (Math.abs(best) < MIN_SKEW_DEGREES || bestScore < level * 1.02) {
+            return 0;
+        }
+        return Math.max(-maxDegrees, Math.min(maxDegrees, best));
+    }
+
+    private static long score(int[] xs, int[] ys, int count, double degrees, int step, long[] bins) {
+        Arrays.fill(bins, 0);
+        final double sin = Math.sin(Math.toRadians(degrees));
+        final double cos = Math.cos(Math.toRadians(degrees));
+        final int offset = bins.length / 2;
+        for (int i = 0; i < count; i++) {
+            bins[(int) Math.floor((ys[i] * cos - xs[i] * sin) / step) + offset]++;
+        }
+        long score = 0;
+        for (long bin : bins) {
+            score += bin * bin;
+        }
+        return score;
+    }
+
+    /**
+     * The part of the image with content plus a small margin: mostly dark scanner borders along the
+     * edges are cut off first, then blank margins. The whole image if it has no content.
+     */
+    static Rectangle content(Gray gray, int threshold) {
+        final int step = gray.step();
+        final int rows = (gray.height() + step - 1) / step;
+        final int columns = (gray.width() + step - 1) / step;
+        final boolean[] ink = new boolean[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            int index = gray.index(0, row * step);
+            for (int column = 0; column < columns; column++, index += step) {
+                ink[row * columns + column] = (gray.data()[index] & 0xFF) < threshold;
+            }
+        }
+        // [top, bottom) x [left, right) in samples
+        final int[] area = {0, rows, 0, columns};
+        trim(ink, columns, area, share -> share < BORDER_INK_SHARE);
+        // the border would otherwise count as ink in every row and column it crosses
+        trim(ink, columns, area, share -> share > EMPTY_INK_SHARE);
+        if (area[0] >= area[1] || area[2] >= area[3]) {
+            return new Rectangle(gray.width(), gray.height());
+        }
+        final int x = Math.max(0, area[2] * step - MARGIN_PIXELS);
+        final int y = Math.max(0, area[0] * step - MARGIN_PIXELS);
+        return new Rectangle(x, y,
+                Math.min(gray.width(), area[3] * step + MARGIN_PIXELS) - x,
+                Math.min(gray.height(), area[1] * step + MARGIN_PIXELS) - y);
+    }
+
+    /**
+     * Move each edge of {@code area} inwards to the first row or column whose share of ink, within the
+     * area, is {@code kept}.
+     */
+    private static void trim(boolean[] ink, int columns, int[] area, DoublePredicate kept) {
+        final int top = area[0];
+        final int bottom = area[1];
+        final int left = area[2];
+        final int right = area[3];
+        while (area[0] < bottom && !kept.test(rowShare(ink, columns, area[0], left, right))) {
+            area[0]++;
+        }
+        while (area[1] > area[0] && !kept.test(rowShare(ink, columns, area[1] - 1, left, right))) {
+            area[1]--;
+        }
+        while (area[2] < right && !kept.test(columnShare(ink, columns, area[2], top, bottom))) {
+            area[2]++;
+        }
+        while (area[3] > area[2] && !kept.test(columnShare(ink, columns, area[3] - 1, top, bottom))) {
+            area[3]--;
+        }
+    }
+
+    private static double rowShare(boolean[] ink, int columns, int row, int left, int right) {
+        int count = 0;
+        for (int column = left; column < right; column++) {
+            if (ink[row * columns + column]) {
+                count++;
+            }
+        }
+        return right > left ? (double) count / (right - left) : 0;
+    }
+
+    private static double columnShare(boolean[] ink, int columns, int column, int top, int bottom) {
+        int count = 0;
+        for (int row = top; row < bottom; row++) {
+            if (ink[row * columns + column]) {
+                count++;
+            }
+        }
+        return bottom > top ? (double) count / (bottom - top) : 0;
+    }
+
+    /**
+     * The 8-bit grey pixels behind an image, {@code data[index(x, y)]}.
+     */
+    record Gray(byte[] data, int offset, int stride, int width, int height) {
+
+        /**
+         * The pixels of a grey image without copying them, any other image is converted first.
+         */
+        static Gray of(BufferedImage image) {
+            BufferedImage gray = image;
+            if (image.getType() != BufferedImage.TYPE_BYTE_GRAY
+                    || !(image.getRaster().getSampleModel() instanceof ComponentSampleModel model) || model.getPixelStride() != 1) {
+                gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+                final Graphics2D graphics = gray.createGraphics();
+                try {
+                    graphics.drawImage(image, 0, 0, null);
+                } finally {
+                    graphics.dispose();
+                }
+            }
+            final Raster raster = gray.getRaster();
+            final ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+            final DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+            // sub images share the parent's array, starting further in
+            final int offset = buffer.getOffset()
+                    + model.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+            return new Gray(buffer.getData(), offset, model.getScanlineStride(), gray.getWidth(), gray.getHeight());
+        }
+
+        int index(int x, int y) {
+            return offset + y * stride + x;
+        }
+
+        int step() {
+            return Math.max(1, width / ANALYSIS_WIDTH);
+        }
+    }
+}
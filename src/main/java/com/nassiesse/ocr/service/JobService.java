@@ -0,0 +1,300 @@
+package com.nassiesse.ocr.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nassiesse.ocr.JobProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronous extraction jobs backed by a directory per job, so queued and running jobs survive a
+ * restart.
+ * <p>
+ * A job directory holds {@code job.json} with the job state, {@code input.pdf}, one text file per
+ * page that was extracted and, once all pages are done, {@code result.txt} with their joined text. Pages
+ * that failed or timed out are listed in the job instead. A job interrupted by a restart is queued again
+ * and only processes the pages that have no text file yet. Jobs aren't held to
+ * {@link com.nassiesse.ocr.SchedulerProperties#getDocumentTimeoutSeconds()}. At most
+ * {@link JobProperties#getWorkerConcurrency()} jobs run at a time. Finished and failed jobs are deleted
+ * {@link JobProperties#getRetentionHours()} after they last changed.
+ */
+@Service
+public class JobService implements DisposableBean {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+    private static final String JOB_FILE = "job.json";
+    private static final String INPUT_FILE = "input.pdf";
+    private static final String PAGES_DIR = "pages";
+    private static final String RESULT_FILE = "result.txt";
+    private static final long CLEANUP_INTERVAL_MINUTES = 10;
+
+    private final OCRService service;
+    private final JobProperties properties;
+    private final Path directory;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService cleanup;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public JobService(OCRService service, JobProperties properties) {
+        this.service = service;
+        this.properties = properties;
+        this.directory = Path.of(properties.getDirectory());
+        final AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(properties.getWorkerConcurrency(), runnable -> {
+            final Thread thread = new Thread(runnable, "ocr-job-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cleanup = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ocr-job-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (properties.getRetentionHours() > 0) {
+            cleanup.scheduleWithFixedDelay(() -> deleteExpired(System.currentTimeMillis()),
+                    CLEANUP_INTERVAL_MINUTES, CLEANUP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Pick up the jobs that were queued or running when the service last stopped. Jobs submitted while the
+     * service was starting are left alone, they are queued already.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> dirs = Files.list(directory)) {
+            dirs.map(dir -> dir.resolve(JOB_FILE)).filter(Files::isRegularFile).forEach(file -> {
+                try {
+                    final Job job = mapper.readValue(file.toFile(), Job.class);
+                    // a job submitted since startup is already queued, and its in-memory state is the current one
+                    if (jobs.putIfAbsent(job.id(), job) != null) {
+                        return;
+                    }
+                    if (job.status() == Job.Status.QUEUED || job.status() == Job.Status.RUNNING) {
+                        LOGGER.info("Resuming job " + job.id());
+                        update(job.id(), Job::queued);
+                        enqueue(job.id());
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Skipping unreadable job " + file, e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to resume jobs from " + directory, e);
+        }
+    }
+
+    public Job submit(MultipartFile upload) throws IOException {
+        final Job job = Job.create(new Job.Source(upload.getOriginalFilename(), null, null));
+        final Path dir = Files.createDirectories(directory.resolve(job.id()));
+        upload.transferTo(dir.resolve(INPUT_FILE));
+        return start(job);
+    }
+
+    /**
+     * Queue a job for an S3 object; the object is downloaded into the job directory by the worker.
+     */
+    public Job submitS3(String bucket, String key) throws IOException {
+        final Job job = Job.create(new Job.Source(key, bucket, key));
+        Files.createDirectories(directory.resolve(job.id()));
+        return start(job);
+    }
+
+    public Optional<Job> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * The joined text of a finished job.
+     */
+    public Optional<Path> result(String id) {
+        return get(id).filter(job -> job.status() == Job.Status.DONE)
+                .map(job -> directory.resolve(job.id()).resolve(RESULT_FILE));
+    }
+
+    /**
+     * Delete the finished and failed jobs that haven't changed for the retention period before {@code now}.
+     */
+    void deleteExpired(long now) {
+        final long expired = now - TimeUnit.HOURS.toMillis(properties.getRetentionHours());
+        jobs.values().stream()
+                .filter(job -> job.status() == Job.Status.DONE || job.status() == Job.Status.FAILED)
+                .filter(job -> job.updatedAt() < expired)
+                .forEach(job -> {
+                    jobs.remove(job.id());
+                    try (Stream<Path> files = Files.walk(directory.resolve(job.id()))) {
+                        files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+                        LOGGER.info("Deleted expired job " + job.id());
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to delete job " + job.id(), e);
+                    }
+                });
+    }
+
+    private Job start(Job job) throws IOException {
+        jobs.put(job.id(), job);
+        save(job);
+        enqueue(job.id());
+        LOGGER.info("Queued job " + job.id());
+        return job;
+    }
+
+    private void enqueue(String id) {
+        workers.execute(() -> process(id));
+    }
+
+    private void process(String id) {
+        final Path dir = directory.resolve(id);
+        try {
+            final Path input = dir.resolve(INPUT_FILE);
+            if (!Files.exists(input)) {
+                final Job.Source source = jobs.get(id).source();
+                final Path download = dir.resolve(INPUT_FILE + ".part");
+                service.downloadS3(source.bucket(), source.key(), download);
+                Files.move(download, input, StandardCopyOption.ATOMIC_MOVE);
+            }
+            final Path pages = Files.createDirectories(dir.resolve(PAGES_DIR));
+            try (OCRService.Extraction extraction = service.openPDF(input.toFile())) {
+                final int pageCount = extraction.getPageCount();
+                final int pagesDone = (int) countFiles(pages);
+                update(id, job -> job.running(pageCount, pagesDone));
+                // a job has no one waiting on it, so it runs to the end rather than to the document timeout
+                extraction.onlyPages(index -> !Files.exists(pageFile(pages, index))).withoutDocumentTimeout().run(page -> {
+                    // failed pages get no file, so a resumed job tries them again
+                    if (page.status() == OCRService.PageStatus.OK) {
+                        write(pageFile(pages, page.index()), page.text());
+                        update(id, Job::pageDone);
+                    }
+                });
+                final Path result = dir.resolve(RESULT_FILE + ".part");
+                try (Writer out = Files.newBufferedWriter(result, StandardCharsets.UTF_8)) {
+                    for (int i = 0; i < pageCount; i++) {
+                        final Path page = pageFile(pages, i);
+                        if (Files.exists(page)) {
+                            out.write(Files.readString(page, StandardCharsets.UTF_8));
+                        }
+                    }
+                }
+                Files.move(result, dir.resolve(RESULT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                update(id, job -> job.done(extraction.isTruncated(), extraction.getFailedPages()));
+            }
+            LOGGER.info("Finished job " + id);
+        } catch (SchedulerBusyException e) {
+            LOGGER.info("Scheduler busy, retrying job " + id + " in " + properties.getBusyRetrySeconds() + "s");
+            CompletableFuture.delayedExecutor(properties.getBusyRetrySeconds(), TimeUnit.SECONDS, workers)
+                    .execute(() -> process(id));
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Job " + id + " failed", e);
+            try {
+                update(id, job -> job.failed(String.valueOf(e.getMessage())));
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private synchronized void update(String id, UnaryOperator<Job> change) throws IOException {
+        final Job job = change.apply(jobs.get(id));
+        jobs.put(id, job);
+        save(job);
+    }
+
+    private void save(Job job) throws IOException {
+        write(directory.resolve(job.id()).resolve(JOB_FILE), mapper.writeValueAsString(job));
+    }
+
+    private static void write(Path file, String text) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + ".part");
+        Files.writeString(temp, text, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path pageFile(Path pages, int index) {
+        return pages.resolve(index + ".txt");
+    }
+
+    private static long countFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".txt")).count();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdownNow();
+        cleanup.shutdownNow();
+    }
+
+    /**
+     * @param truncated   whether extraction stopped with pages left; only written when set
+     * @param failedPages the pages that failed or timed out, with their status and error; only written if
+     *                    there are any
+     */
+    public record Job(String id, Status status, Source source, int pageCount, int pagesDone,
+                      @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean truncated,
+                      @JsonInclude(JsonInclude.Include.NON_EMPTY) List<OCRService.PageText> failedPages, String error,
+                      long createdAt, long updatedAt) {
+
+        public enum Status {QUEUED, RUNNING, DONE, FAILED}
+
+        /**
+         * Where the PDF came from: an upload with its file name, or an S3 bucket and key.
+         */
+        public record Source(String fileName, String bucket, String key) {}
+
+        static Job create(Source source) {
+            final long now = System.currentTimeMillis();
+            return new Job(UUID.randomUUID().toString(), Status.QUEUED, source, 0, 0, false, List.of(), null, now, now);
+        }
+
+        Job queued() {
+            return new Job(id, Status.QUEUED, source, pageCount, pagesDone, false, List.of(), null, createdAt, System.currentTimeMillis());
+        }
+
+        Job running(int pageCount, int pagesDone) {
+            return new Job(id, Status.RUNNING, source, pageCount, pagesDone, false, List.of(), null, createdAt, System.currentTimeMillis());
+        }
+
+        Job pageDone() {
+            return new Job(id, status, source, pageCount, pagesDone + 1, truncated, failedPages, error, createdAt, System.currentTimeMillis());
+        }
+
+        Job done(boolean truncated, List<OCRService.PageText> failedPages) {
+            return new Job(id, Status.DONE, source, pageCount, pagesDone, truncated, failedPages, null, createdAt,
+                    System.currentTimeMillis());
+        }
+
+        Job failed(String error) {
+            return new Job(id, Status.FAILED, source, pageCount, pagesDone, truncated, failedPages, error, createdAt, System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.nassiesse.ocr.service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Guesses the language of OCR'd text from its most common words.
+ * <p>
+ * Meant for the text of a quick low resolution pass with all candidate languages loaded: misread words
+ * don't matter as long as enough of the short function words come through.
+ */
+final class LanguageDetector {
+    /**
+     * Fewer hits than this are too little to go on.
+     */
+    static final int MIN_HITS = 3;
+
+    private static final Map<String, Set<String>> STOPWORDS = Map.of(
+            "eng", Set.of("the", "and", "of", "to", "in", "is", "that", "for", "it", "with", "as", "was", "on",
+                    "be", "by", "this", "are", "or", "from", "at", "which", "not", "have", "has", "an", "we", "you"),
+            "deu", Set.of("der", "die", "und", "das", "den", "des", "ist", "nicht", "ein", "eine", "zu", "mit",
+                    "von", "sich", "auf", "für", "dem", "im", "auch", "wird", "werden", "oder", "bei", "nach", "wir", "sie"),
+            "fra", Set.of("le", "la", "les", "et", "des", "est", "un", "une", "du", "dans", "que", "qui", "pour",
+                    "pas", "sur", "au", "aux", "avec", "ce", "ces", "par", "sont", "nous", "vous", "il", "elle"),
+            "spa", Set.of("el", "los", "las", "y", "del", "que", "en", "un", "una", "por", "con", "para", "es",
+                    "se", "su", "al", "lo", "como", "más", "pero", "sus", "le", "ya", "muy"),
+            "ita", Set.of("il", "di", "che", "e", "la", "per", "un", "una", "sono", "non", "con", "del", "della",
+                    "gli", "le", "da", "nel", "nella", "si", "al", "alla", "anche", "come", "questo"),
+            "nld", Set.of("de", "het", "een", "en", "van", "is", "dat", "op", "te", "zijn", "voor", "met", "niet",
+                    "aan", "er", "om", "ook", "als", "bij", "door", "wordt", "worden", "naar", "wij"),
+            "por", Set.of("o", "os", "as", "e", "do", "da", "dos", "das", "que", "em", "um", "uma", "para", "com",
+                    "não", "por", "se", "na", "no", "mais", "ao", "é", "foi", "são"));
+
+    private LanguageDetector() {
+    }
+
+    /**
+     * The candidate whose common words occur most often in {@code text}, or {@code null} if none of them
+     * does at least {@link #MIN_HITS} times. Candidates this class has no word list for are never chosen;
+     * ties go to the earlier candidate.
+     */
+    static String guess(String text, List<String> candidates) {
+        final int[] hits = new int[candidates.size()];
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                if (STOPWORDS.getOrDefault(candidates.get(i), Set.of()).contains(word)) {
+                    hits[i]++;
+                }
+            }
+        }
+        int best = -1;
+        for (int i = 0; i < hits.length; i++) {
+            if (hits[i] >= MIN_HITS && (best < 0 || hits[i] > hits[best])) {
+                best = i;
+            }
+        }
+        return best < 0 ? null : candidates.get(best);
+    }
+}
@@ -0,0 +1,89 @@
+package com.nassiesse.ocr.service;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line and word boxes of the OCR'd parts of a page, recognised in the same Tesseract pass as the text.
+ * <p>
+ * Boxes are in whole PDF points from the top left corner of the page's crop box, so they can be laid
+ * over the page whatever resolution it was rendered at. Confidences go from 0 to 100. Words are written
+ * as arrays, {@code ["text", x, y, width, height, confidence]}, to keep pages with thousands of them small.
+ */
+public final class Layout {
+
+    private Layout() {
+    }
+
+    public record Line(int x, int y, int width, int height, int confidence, List<Word> words) {
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    public record Word(String text, int x, int y, int width, int height, int confidence) {
+    }
+
+    /**
+     * Where an OCR'd image is on the page: the transform from its pixels to points.
+     */
+    record Placement(AffineTransform transform) {
+
+        static Placement of(double x, double y, double pointsPerPixelX, double pointsPerPixelY) {
+            return new Placement(new AffineTransform(pointsPerPixelX, 0, 0, pointsPerPixelY, x, y));
+        }
+
+        /**
+         * An image covering the whole page, rendered at {@code dpi}.
+         */
+        static Placement page(int dpi) {
+            return of(0, 0, 72.0 / dpi, 72.0 / dpi);
+        }
+
+        /**
+         * The resolution of the image, in pixels per inch of the page.
+         */
+        int dpi() {
+            return (int) Math.round(72 / Math.hypot(transform.getScaleX(), transform.getShearY()));
+        }
+
+        /**
+         * The placement of an image made from this one, given the transform from its pixels to this one's.
+         */
+        Placement then(AffineTransform pixels) {
+            final AffineTransform combined = new AffineTransform(transform);
+            combined.concatenate(pixels);
+            return new Placement(combined);
+        }
+
+        /**
+         * Move lines found in the image's pixels to the page. Boxes of rotated images become the boxes
+         * around them.
+         */
+        List<Line> place(List<Line> lines) {
+            final List<Line> placed = new ArrayList<>(lines.size());
+            for (Line line : lines) {
+                final List<Word> words = new ArrayList<>(line.words().size());
+                for (Word word : line.words()) {
+                    final Rectangle box = box(word.x(), word.y(), word.width(), word.height());
+                    words.add(new Word(word.text(), box.x, box.y, box.width, box.height, word.confidence()));
+                }
+                final Rectangle box = box(line.x(), line.y(), line.width(), line.height());
+                placed.add(new Line(box.x, box.y, box.width, box.height, line.confidence(), words));
+            }
+            return placed;
+        }
+
+        private Rectangle box(int x, int y, int width, int height) {
+            final Rectangle2D bounds = transform.createTransformedShape(new Rectangle2D.Double(x, y, width, height)).getBounds2D();
+            // whole points outwards, so the box covers the word; the slack absorbs rounding errors
+            final int left = (int) Math.floor(bounds.getMinX() + 1e-6);
+            final int top = (int) Math.floor(bounds.getMinY() + 1e-6);
+            return new Rectangle(left, top, (int) Math.ceil(bounds.getMaxX() - 1e-6) - left,
+                    (int) Math.ceil(bounds.getMaxY() - 1e-6) - top);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.DocumentProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the heap taken up by rendered pages within {@link DocumentProperties#getRenderBudgetBytes()}.
+ * <p>
+ * A page reserves the size of its rasters, estimated from its area and DPI, before it is rendered and
+ * gives it back once its OCR is done. A page that doesn't fit at its DPI is rendered at the highest one
+ * that does, down to {@link DocumentProperties#getMinRenderDpi()}, and waits for room below that. Pages
+ * wait in the order they came, so a large scan isn't passed over by smaller ones forever, and a page
+ * larger than the whole budget is let through once nothing else is reserved.
+ */
+@Component
+public class MemoryGovernor {
+    // one byte per grey pixel, for the rendering and the preprocessed copy of it
+    static final int BYTES_PER_PIXEL = 2;
+    // how often a waiting page checks whether its extraction was stopped, which signals nothing
+    private static final long STOP_CHECK_MILLIS = 100;
+
+    private final long budget;
+    private final int minDpi;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    // reservations waiting for room, in the order they came; guarded by lock
+    private final Deque<Reservation> waiting = new ArrayDeque<>();
+    private final Timer waitTimer;
+    private final Counter lowered;
+    private long reserved;
+
+    @Autowired
+    public MemoryGovernor(DocumentProperties properties, MeterRegistry registry) {
+        this(properties.getRenderBudgetBytes(), properties.getMinRenderDpi(), registry);
+    }
+
+    MemoryGovernor(long budget, int minDpi, MeterRegistry registry) {
+        this.budget = budget;
+        this.minDpi = minDpi;
+        this.waitTimer = Timer.builder("ocr.render.memory.wait")
+                .description("Time pages wait for room in the render memory budget")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.lowered = Counter.builder("ocr.render.lowered")
+                .description("Pages rendered at a lower DPI to fit into the render memory budget")
+                .register(registry);
+        Gauge.builder("ocr.render.memory", this, MemoryGovernor::getReserved)
+                .description("Heap reserved for the rasters of pages being rendered and OCRed")
+                .tag("state", "reserved")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ocr.render.memory", this, MemoryGovernor::getBudget)
+                .description("Heap reserved for the rasters of pages being rendered and OCRed")
+                .tag("state", "budget")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Estimated heap taken up by the rasters of a page of {@code squareInches} rendered at {@code dpi}.
+     */
+    static long rasterBytes(double squareInches, int dpi) {
+        return (long) Math.ceil(squareInches * dpi * dpi) * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * A reservation of nothing yet, see {@link Reservation#reserve(double, int, long)}.
+     */
+    public Reservation reservation() {
+        return new Reservation();
+    }
+
+    public long getReserved() {
+        lock.lock();
+        try {
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Heap reserved for one page. Closing it gives the heap back.
+     */
+    public final class Reservation implements AutoCloseable {
+        // guarded by the governor lock
+        private long bytes;
+
+        private Reservation() {
+        }
+
+        /**
+         * Reserve the rasters of a page of {@code squareInches} at {@code dpi} and {@code extraBytes} more
+         * for other images of it, waiting for room if need be.
+         *
+         * @return the DPI to render the page at, lower than {@code dpi} if the budget is short
+         */
+        public int reserve(double squareInches, int dpi, long extraBytes) throws InterruptedException {
+            try {
+                return reserve(squareInches, dpi, extraBytes, PageDeadline.NONE);
+            } catch (InterruptedIOException e) {
+                throw new IllegalStateException("A page without a deadline timed out", e);
+            }
+        }
+
+        /**
+         * Like {@link #reserve(double, int, long)}, but stop waiting once {@code deadline} expires.
+         *
+         * @throws java.util.concurrent.CancellationException if the deadline's extraction was stopped
+         * @throws InterruptedIOException                     if the deadline passed
+         */
+        int reserve(double squareInches, int dpi, long extraBytes, PageDeadline deadline)
+                throws InterruptedException, InterruptedIOException {
+            final long started = System.nanoTime();
+            lock.lockInterruptibly();
+            try {
+                if (bytes > 0) {
+                    throw new IllegalStateException("Page memory is already reserved");
+                }
+                waiting.addLast(this);
+                try {
+                    while (true) {
+                        if (waiting.peekFirst() == this) {
+                            final long free = budget - reserved;
+                            final long full = rasterBytes(squareInches, dpi) + extraBytes;
+                            if (full <= free || reserved == 0) {
+                                return grant(full, dpi);
+                            }
+                            final int fit = (int) Math.sqrt((free - extraBytes) / (squareInches * BYTES_PER_PIXEL));
+                            if (fit >= minDpi && fit < dpi) {
+                                lowered.increment();
+                                return grant(rasterBytes(squareInches, fit) + extraBytes, fit);
+                            }
+                        }
+                        deadline.check();
+                        released.await(Math.min(deadline.remainingMillis(), STOP_CHECK_MILLIS), TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    waiting.remove(this);
+                    // the next one in line may fit as well
+                    released.signalAll();
+                }
+            } finally {
+                lock.unlock();
+                waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private int grant(long bytes, int dpi) {
+            this.bytes = bytes;
+            reserved += bytes;
+            return dpi;
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (bytes > 0) {
+                    reserved -= bytes;
+                    bytes = 0;
+                    released.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,86 +1,192 @@
 package com.nassiesse.ocr.service;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.nassiesse.ocr.DocumentProperties;
+import com.nassiesse.ocr.S3Properties;
+import com.nassiesse.ocr.SchedulerProperties;
 import com.nassiesse.ocr.TesseractProperties;
 import com.nassiesse.ocr.controller.OCRController;
+import io.micrometer.observation.Observation;
 import net.sourceforge.tess4j.ITesseract;
 import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.io.MemoryUsageSetting;
-import org.apache.pdfbox.multipdf.Splitter;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
-import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Comparator;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntPredicate;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.regex.Pattern;
 
 @Service
 public class OCRService {
     private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+    private static final Pattern LANGUAGE = Pattern.compile("[A-Za-z0-9_]+");
+    private static final double POINTS_PER_INCH = 72;
 
     private final TesseractProperties tesseractProperties;
-    private final ExecutorService executor;
-    private final S3Client s3Client;
+    private final TesseractPool tesseractPool;
+    private final ExternalTesseract external;
+    private final OcrScheduler scheduler;
+    private final SchedulerProperties schedulerProperties;
+    private final ResultCache cache;
+    private final DocumentProperties documentProperties;
+    private final PageClassifier classifier;
+    private final ImagePreprocessor preprocessor;
+    private final OcrMetrics metrics;
+    private final MemoryGovernor governor;
+    private final S3Transfer s3Transfer;
 
-    public OCRService(TesseractProperties properties) {
+    public OCRService(TesseractProperties properties, TesseractPool tesseractPool, ExternalTesseract external, OcrScheduler scheduler,
+                      SchedulerProperties schedulerProperties, ResultCache cache,
+                      DocumentProperties documentProperties, PageClassifier classifier, ImagePreprocessor preprocessor,
+                      OcrMetrics metrics, MemoryGovernor governor, S3Transfer s3Transfer) {
         this.tesseractProperties = properties;
-        this.executor = Executors.newVirtualThreadPerTaskExecutor();
-        //.newScheduledThreadPool(tesseractProperties.getWorkerPoolSize());
-        initialize();
-        this.s3Client = S3Client.builder()
-                // Configure region or other options as needed
-                .build();
+        this.documentProperties = documentProperties;
+        this.classifier = classifier;
+        this.preprocessor = preprocessor;
+        this.metrics = metrics;
+        this.governor = governor;
+        this.schedulerProperties = schedulerProperties;
+        this.cache = cache;
+        this.tesseractPool = tesseractPool;
+        this.external = external;
+        this.scheduler = scheduler;
+        this.s3Transfer = s3Transfer;
         Logger.getAnonymousLogger().info("Started OCRService");
     }
 
-    public File getS3File(String bucketName, String key) throws IOException {
-		ResponseInputStream<GetObjectResponse> s3objectResponse = this.s3Client.getObject(GetObjectRequest.builder()
+    /**
+     * Like {@link #openPDF(File)} for an S3 object. When the object's ETag is still the one of an earlier
+     * extraction whose result is cached, the object isn't downloaded at all. Objects larger than
+     * {@link DocumentProperties#getInMemoryMaxBytes()} are downloaded to a temp file first, in parallel
+     * ranges of {@link S3Properties#getPartSizeBytes()}, like large uploads are.
+     */
+    public Extraction openS3PDF(String bucketName, String key) throws IOException {
+        return openS3PDF(bucketName, key, ExtractionOptions.DEFAULT);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code options} ask for OCR settings that don't exist
+     */
+    public Extraction openS3PDF(String bucketName, String key, ExtractionOptions requested) throws IOException {
+        final ExtractionOptions options = resolve(requested);
+        final HeadObjectResponse head = metrics.stage("s3.head", () -> s3Transfer.head(bucketName, key));
+        if (cache.isEnabled() && !options.layout()) {
+            final Optional<List<String>> cached = cache.getS3ContentHash(bucketName, key, head.eTag())
+                    .flatMap(contentHash -> cache.getDocument(cache.documentKey(contentHash, variant(options))));
+            if (cached.isPresent()) {
+                LOGGER.info("Serving cached text for unchanged S3 object " + key);
+                return new Extraction(cached.get(), options);
+            }
+        }
+        if (head.contentLength() > documentProperties.getInMemoryMaxBytes()) {
+            final File file = File.createTempFile("pdf", ".pdf");
+            try {
+                metrics.documentBytes("s3", metrics.stage("s3.download", () -> s3Transfer.download(bucketName, key, head, file.toPath())));
+                final String contentHash = cache.isEnabled() ? ResultCache.contentHash(file) : null;
+                if (contentHash != null) {
+                    cache.putS3ContentHash(bucketName, key, head.eTag(), contentHash);
+                }
+                return openPDF(file, contentHash, "s3", options).onClose(file::delete);
+            } catch (IOException | RuntimeException e) {
+                file.delete();
+                throw e;
+            }
+        }
+        // load straight from the response, no temp copy; PDFBox keeps small objects in memory
+        try (ResponseInputStream<GetObjectResponse> s3objectResponse = s3Transfer.client().getObject(GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
-                .build());
-		final File file = File.createTempFile("s3file", null);
-        try (InputStream in = new BufferedInputStream(s3objectResponse)) {
-            try (FileOutputStream out = new FileOutputStream(file)) {
-                IOUtils.copy(in, out);
+                .build())) {
+            final MessageDigest digest = ResultCache.sha256();
+            // the download happens while PDFBox parses, so this is one stage
+            final PDDocument document = metrics.stage("s3.load", () -> PDDocument.load(new DigestInputStream(s3objectResponse, digest),
+                    memoryUsage(head.contentLength())));
+            final String contentHash = HexFormat.of().formatHex(digest.digest());
+            LOGGER.info("Loaded " + s3objectResponse.response().contentLength() + " byte(s) from S3 object " + key);
+            metrics.documentBytes("s3", s3objectResponse.response().contentLength());
+            if (cache.isEnabled()) {
+                cache.putS3ContentHash(bucketName, key, s3objectResponse.response().eTag(), contentHash);
             }
+            return open(document, cache.isEnabled() ? contentHash : null, "s3", options);
         }
-        return file;
     }
 
-    void initialize() {
-        try {
-            final File temp = getTestPDFFile();
-            try {
-                extractTextFromPDF(temp);
-            } finally {
-                temp.delete();
-            }
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, e.getMessage(), e);
+    /**
+     * Download an S3 object to {@code target}, e.g. to keep the input of a job across restarts.
+     */
+    public void downloadS3(String bucketName, String key, Path target) throws IOException {
+        final HeadObjectResponse head = metrics.stage("s3.head", () -> s3Transfer.head(bucketName, key));
+        metrics.stage("s3.download", () -> s3Transfer.download(bucketName, key, head, target));
+    }
+
+    /**
+     * The keys of at most {@code max} objects under {@code prefix}, in S3's (lexicographic) order.
+     */
+    public List<String> listS3Keys(String bucketName, String prefix, int max) throws IOException {
+        return metrics.stage("s3.list", () -> s3Transfer.client().listObjectsV2Paginator(ListObjectsV2Request.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix)
+                        .maxKeys(Math.min(max, 1000))
+                        .build())
+                .contents().stream()
+                .filter(object -> !object.key().endsWith("/"))
+                .limit(max)
+                .map(S3Object::key)
+                .toList());
+    }
+
+    /**
+     * Extract the bundled test document, so the first request doesn't pay for loading PDFBox's classes
+     * and fonts.
+     */
+    void warmUpDocument() throws IOException {
+        final File temp = getTestPDFFile();
+        // bypass the cache, the point is to exercise PDFBox
+        try (Extraction extraction = openPDF(temp, false)) {
+            extraction.collect();
+        } finally {
+            temp.delete();
         }
     }
 
@@ -101,72 +207,386 @@ public class OCRService {
 
 
     public ExtractedPdfData extractTextFromPDF(File file) throws IOException {
-        long startTime = System.nanoTime();
-        try {
-            try (final PDDocument document = PDDocument.load(file, MemoryUsageSetting.setupTempFileOnly())) {
-                LOGGER.info("Loaded PDF document");
-                final Splitter splitter = new Splitter();
-                final List<PDDocument> pages = splitter.split(document);
-
-                LOGGER.info("Split PDF document in " + pages.size() + " page(s)");
-
-                List<CompletableFuture<PageText>> futures = IntStream.range(0, pages.size()).mapToObj(index -> {
-                    Supplier<PageText> work = () -> {
-                        try {
-                            return new PageText(index, extractTextFromPDFPage(pages.get(index)));
-                        } catch (IOException | TesseractException e) {
-                            LOGGER.log(Level.SEVERE, e.getMessage(), e);
-                            return new PageText(index, "");
-                        }
-                    };
-                    return CompletableFuture.supplyAsync(work, executor);
-                }).toList();
-
-                final String text = joinToList(futures).stream()
-                        .sorted(Comparator.comparingInt(PageText::index))
-                        .map(PageText::text).collect(Collectors.joining());
-
-                LOGGER.info("Total text length: " + text.length());
-                return new ExtractedPdfData(text, pages.size());
-            }
-        } finally {
-            long durationNanos = System.nanoTime() - startTime;
-            LOGGER.info("Extraction took " + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + 's');
+        try (Extraction extraction = openPDF(file)) {
+            return extraction.collect();
         }
     }
 
-    private String extractTextFromPDFPage(PDDocument document) throws IOException, TesseractException {
+    /**
+     * Load the document and reserve scheduler capacity for its pages. Pages are only processed by
+     * {@link Extraction#run(PageConsumer)}, so callers can still turn the request away or start a
+     * streaming response in between. Documents whose text is cached are neither loaded nor scheduled.
+     *
+     * @throws SchedulerBusyException if the scheduler can't take that many pages right now
+     */
+    public Extraction openPDF(File file) throws IOException {
+        metrics.documentBytes("file", file.length());
+        return openPDF(file, cache.isEnabled());
+    }
+
+    public Extraction openPDF(MultipartFile upload) throws IOException {
+        return openPDF(upload, ExtractionOptions.DEFAULT);
+    }
 
+    /**
+     * Like {@link #openPDF(File)} for an uploaded file. Uploads up to {@link DocumentProperties#getInMemoryMaxBytes()}
+     * are parsed from memory, larger ones are moved to a file of their own (the servlet container
+     * renames its temp file where it can) and parsed from disk without ever being held on the heap.
+     *
+     * @throws IllegalArgumentException if {@code options} ask for OCR settings that don't exist
+     */
+    public Extraction openPDF(MultipartFile upload, ExtractionOptions requested) throws IOException {
+        final ExtractionOptions options = resolve(requested);
+        metrics.documentBytes("upload", upload.getSize());
+        if (upload.getSize() <= documentProperties.getInMemoryMaxBytes()) {
+            final byte[] bytes = upload.getBytes();
+            final String contentHash = cache.isEnabled() ? HexFormat.of().formatHex(ResultCache.sha256().digest(bytes)) : null;
+            return open(metrics.stage("load", () -> PDDocument.load(bytes, "", null, null, memoryUsage(bytes.length))),
+                    contentHash, "upload", options);
+        }
+        final File file = File.createTempFile("upload", ".pdf");
         try {
-            final PDFTextStripper stripper = new PDFTextStripper();
-            // see if we can just strip the text from the file
+            upload.transferTo(file);
+            return openPDF(file, cache.isEnabled() ? ResultCache.contentHash(file) : null, "upload", options).onClose(file::delete);
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+    }
 
-            final String strippedText = stripper.getText(document).trim();
+    Extraction openPDF(File file, boolean useCache) throws IOException {
+        return openPDF(file, useCache ? ResultCache.contentHash(file) : null, "file", resolve(ExtractionOptions.DEFAULT));
+    }
 
-            LOGGER.info("Stripped text length: " + strippedText.length());
-            if (false || !strippedText.isBlank()) {
-                return strippedText;
+    private Extraction openPDF(File file, String contentHash, String source, ExtractionOptions options) throws IOException {
+        if (contentHash != null && !options.layout()) {
+            final Optional<List<String>> cached = cache.getDocument(cache.documentKey(contentHash, variant(options)));
+            if (cached.isPresent()) {
+                LOGGER.info("Serving cached text for " + contentHash);
+                return new Extraction(cached.get(), options).withContentHash(contentHash);
             }
-        } catch (Exception e) {
-            LOGGER.log(Level.WARNING, "Text stripping failed", e);
         }
+        return open(metrics.stage("load", () -> PDDocument.load(file, memoryUsage(file.length()))),
+                contentHash, source, options);
+    }
 
-        // Extract images from file
-        LOGGER.info("Extract image");
-        File image = extractImage(document);
+    private Extraction open(PDDocument document, String contentHash, String source, ExtractionOptions options) throws IOException {
         try {
-            final ITesseract tesseract = newTesseractInstance(this.tesseractProperties);
-            final String result = tesseract.doOCR(image);
-            Logger.getAnonymousLogger().info("Result size: " + result.length());
-            return result;
+            if (contentHash != null && !options.layout()) {
+                final Optional<List<String>> cached = cache.getDocument(cache.documentKey(contentHash, variant(options)));
+                if (cached.isPresent()) {
+                    LOGGER.info("Serving cached text for " + contentHash);
+                    document.close();
+                    return new Extraction(cached.get(), options).withContentHash(contentHash);
+                }
+            }
+            final int pageCount = document.getNumberOfPages();
+            LOGGER.info("Loaded PDF document with " + pageCount + " page(s)");
+            // only the pages that are going to be extracted take up scheduler capacity
+            int pages = (int) IntStream.range(0, pageCount).filter(options.limits()::includes).count();
+            if (options.limits().maxPages() > 0) {
+                pages = Math.min(pages, options.limits().maxPages());
+            }
+            // no more than a window of them is ever submitted at once
+            pages = Math.min(pages, schedulerProperties.getPageWindow());
+            return new Extraction(document, scheduler.admit(pages), source, options).withContentHash(contentHash);
+        } catch (RuntimeException e) {
+            document.close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@code options} with the configured OCR settings filled in where they don't ask for others.
+     *
+     * @throws IllegalArgumentException if they ask for a language without traineddata or for modes that don't exist
+     */
+    ExtractionOptions resolve(ExtractionOptions options) {
+        final String language = options.language() == null || options.language().isBlank()
+                ? tesseractProperties.getLanguage() : options.language().strip();
+        if (options.language() != null && !ExtractionOptions.AUTO.equals(language)) {
+            for (String part : language.split("\\+", -1)) {
+                if (!LANGUAGE.matcher(part).matches()) {
+                    throw new IllegalArgumentException("Invalid language: " + language);
+                }
+                if (!new File(tesseractProperties.getDataPath(), part + ".traineddata").isFile()) {
+                    throw new IllegalArgumentException("No traineddata for language " + part);
+                }
+            }
+        }
+        final int pageSegMode = options.pageSegMode() != null ? options.pageSegMode() : tesseractProperties.getPageSegMode();
+        if (options.pageSegMode() != null && (pageSegMode < 0 || pageSegMode > 13)) {
+            throw new IllegalArgumentException("Page segmentation mode must be 0 to 13: " + pageSegMode);
+        }
+        final int engineMode = options.engineMode() != null ? options.engineMode() : tesseractProperties.getEngineMode();
+        if (options.engineMode() != null && (engineMode < 0 || engineMode > 3)) {
+            throw new IllegalArgumentException("OCR engine mode must be 0 to 3: " + engineMode);
+        }
+        return new ExtractionOptions(options.layout(), language, pageSegMode, engineMode,
+                options.limits() != null ? options.limits() : ExtractionOptions.Limits.NONE);
+    }
+
+    /**
+     * How the OCR settings of resolved {@code options} differ from the configured ones, for cache keys;
+     * empty if they don't.
+     */
+    private String variant(ExtractionOptions options) {
+        if (options.language().equals(tesseractProperties.getLanguage())
+                && options.pageSegMode() == tesseractProperties.getPageSegMode()
+                && options.engineMode() == tesseractProperties.getEngineMode()) {
+            return "";
+        }
+        return options.language() + '|' + options.pageSegMode() + '|' + options.engineMode();
+    }
+
+    /**
+     * The text of a page of {@code extraction}, with the boxes of its OCR'd lines when they were asked for.
+     */
+    private PageText extractTextFromPDFPage(Extraction extraction, int pageIndex, Observation observation,
+                                            PageDeadline deadline) throws IOException, TesseractException {
+        // the rasters of the page count against the render budget until its OCR is done
+        try (MemoryGovernor.Reservation memory = governor.reservation()) {
+            return extractTextFromPDFPage(extraction, pageIndex, observation, deadline, memory);
+        }
+    }
+
+    private PageText extractTextFromPDFPage(Extraction extraction, int pageIndex, Observation observation,
+                                            PageDeadline deadline, MemoryGovernor.Reservation memory) throws IOException, TesseractException {
+        final PDDocument document = extraction.document;
+        final ExtractionOptions options = extraction.options;
+        final boolean layout = options.layout();
+        final PageClassifier.Analysis analysis;
+        final List<PageClassifier.PageImage> pageImages;
+        final double squareInches;
+        final int wantedDpi;
+        BufferedImage probe = null;
+        String pageKey = null;
+        // PDFBox documents aren't thread safe, only the OCR of the rendered page runs concurrently
+        synchronized (document) {
+            analysis = metrics.stage("classify", () -> classifier.classify(document, pageIndex, deadline));
+            observation.lowCardinalityKeyValue("strategy", analysis.strategy().name().toLowerCase());
+            if (analysis.strategy() == PageClassifier.Strategy.TEXT) {
+                return new PageText(pageIndex, analysis.text(), layout ? List.of() : null);
+            }
+            metrics.fallback(analysis.strategy(), analysis.reason());
+
+            if (cache.isPagesEnabled()) {
+                pageKey = cache.pageKey(ResultCache.pageHash(document.getPage(pageIndex)), variant(options));
+                // cached text has no boxes, but a fresh result still goes to the cache
+                final Optional<String> cached = layout ? Optional.empty() : cache.getPage(pageKey);
+                if (cached.isPresent()) {
+                    LOGGER.info("Serving cached OCR text for page " + pageIndex);
+                    observation.lowCardinalityKeyValue("cached", "true");
+                    return new PageText(pageIndex, cached.get());
+                }
+            }
+
+            final PDRectangle box = document.getPage(pageIndex).getCropBox();
+            squareInches = box.getWidth() / POINTS_PER_INCH * box.getHeight() / POINTS_PER_INCH;
+            wantedDpi = analysis.strategy() == PageClassifier.Strategy.OCR_IMAGES ? tesseractProperties.getDpi()
+                    : metrics.stage("dpi", () -> preprocessor.dpi(document, pageIndex, tesseractProperties.getDpi(), deadline));
+        }
+        deadline.check();
+        // wait for render memory without holding the document, its other pages may need none
+        final long probeBytes = extraction.needsLanguage()
+                ? MemoryGovernor.rasterBytes(squareInches, tesseractProperties.getDetectDpi()) : 0;
+        final int dpi = reserve(memory, pageIndex, squareInches, wantedDpi, probeBytes, deadline);
+        if (dpi < wantedDpi) {
+            // text OCR'd at a lower DPI isn't what a request with memory to spare would get, don't cache it
+            extraction.lowered = true;
+            pageKey = null;
+        }
+        synchronized (document) {
+            if (analysis.strategy() == PageClassifier.Strategy.OCR_IMAGES) {
+                LOGGER.info("Extract " + analysis.regions().size() + " image(s)");
+                pageImages = metrics.stage("images", () -> classifier.images(document, pageIndex, analysis, dpi, deadline));
+            } else {
+                LOGGER.info("Extract image");
+                pageImages = List.of(new PageClassifier.PageImage(metrics.stage("render", () -> renderPage(document, pageIndex, dpi, deadline)),
+                        Layout.Placement.page(dpi)));
+            }
+            if (extraction.needsLanguage()) {
+                probe = metrics.stage("detect.render", () -> renderPage(document, pageIndex, tesseractProperties.getDetectDpi(), deadline));
+            }
+        }
+        // the page may have been cut off while it was rendered, don't take an engine for it then
+        deadline.check();
+        final String language = extraction.language(probe, deadline);
+        final List<PageClassifier.PageImage> prepared = metrics.stage("preprocess", () -> preprocessor.apply(pageImages));
+        List<BufferedImage> images = prepared.stream().map(PageClassifier.PageImage::image).toList();
+        final List<Layout.Placement> placements = prepared.stream().map(PageClassifier.PageImage::placement).toList();
+        // the rasters go to Tesseract as is; only spill them to disk while waiting for an engine when the heap is tight
+        final List<File> spilled = new ArrayList<>();
+        try {
+            if (isHeapLow()) {
+                final List<BufferedImage> spilling = images;
+                metrics.stage("spill", () -> {
+                    for (BufferedImage image : spilling) {
+                        spilled.add(toFile(image));
+                    }
+                    return spilled;
+                });
+                LOGGER.info("Low on heap, spilled " + spilled.size() + " image(s) of page " + pageIndex);
+                images = null;
+            }
+            final List<BufferedImage> pending = images;
+            if (tesseractProperties.isExternal()) {
+                return recognise(pageIndex, analysis.text(), pending, spilled, placements, layout, pageKey, deadline,
+                        (image, imageDpi, found) -> external.recognize(image, imageDpi, language, options.pageSegMode(),
+                                options.engineMode(), found, deadline));
+            }
+            try (TesseractPool.Lease lease = metrics.stage("engine.wait",
+                    () -> tesseractPool.acquire(TesseractPool.EngineKey.of(tesseractProperties, language, options.engineMode()),
+                            options.pageSegMode()))) {
+                try {
+                    return recognise(pageIndex, analysis.text(), pending, spilled, placements, layout, pageKey, deadline,
+                            (image, imageDpi, found) -> found == null ? lease.text(image, imageDpi, deadline)
+                                    : lease.recognize(image, imageDpi, found, deadline));
+                } catch (TesseractException | RuntimeException | LinkageError e) {
+                    // an engine cancelled by the deadline is fine, only one that failed on its own is retired
+                    if (!deadline.isExpired()) {
+                        lease.failed();
+                    }
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TesseractException("Interrupted waiting for a Tesseract engine", e);
+            }
         } finally {
-            image.delete();
+            spilled.forEach(File::delete);
+        }
+    }
+
+    /**
+     * OCR a page's {@code images}, or the {@code spilled} files of them, after its usable {@code text}.
+     */
+    private PageText recognise(int pageIndex, String text, List<BufferedImage> images, List<File> spilled,
+                               List<Layout.Placement> placements, boolean layout, String pageKey, PageDeadline deadline,
+                               Recogniser recogniser) throws IOException, TesseractException {
+        final StringBuilder result = new StringBuilder(text);
+        final List<Layout.Line> lines = layout ? new ArrayList<>() : null;
+        final int count = images != null ? images.size() : spilled.size();
+        metrics.stage("ocr", () -> {
+            for (int i = 0; i < count; i++) {
+                deadline.check();
+                final BufferedImage image = images != null ? images.get(i) : ImageIO.read(spilled.get(i));
+                if (!result.isEmpty()) {
+                    result.append('\n');
+                }
+                final int dpi = placements.get(i).dpi();
+                if (lines == null) {
+                    result.append(recogniser.recognise(image, dpi, null));
+                    continue;
+                }
+                final List<Layout.Line> found = new ArrayList<>();
+                result.append(recogniser.recognise(image, dpi, found));
+                lines.addAll(placements.get(i).place(found));
+            }
+            return result;
+        });
+        Logger.getAnonymousLogger().info("Result size: " + result.length());
+        if (pageKey != null) {
+            cache.putPage(pageKey, result.toString());
+        }
+        return new PageText(pageIndex, result.toString(), lines);
+    }
+
+    /**
+     * OCR of one image by an engine or a process.
+     */
+    @FunctionalInterface
+    private interface Recogniser {
+        /**
+         * @param dpi   the resolution of the image
+         * @param lines where to add the image's line and word boxes, {@code null} if they aren't wanted
+         */
+        String recognise(BufferedImage image, int dpi, List<Layout.Line> lines) throws IOException, TesseractException;
+    }
+
+    /**
+     * Reserve render memory for page {@code pageIndex} at {@code dpi}, see {@link MemoryGovernor}, waiting
+     * no longer than {@code deadline}.
+     *
+     * @return the DPI to render the page at
+     */
+    private int reserve(MemoryGovernor.Reservation memory, int pageIndex, double squareInches, int dpi,
+                        long extraBytes, PageDeadline deadline) throws IOException {
+        final int granted;
+        try {
+            granted = metrics.stage("memory.wait", () -> memory.reserve(squareInches, dpi, extraBytes, deadline));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for render memory");
         }
+        if (granted < dpi) {
+            LOGGER.info("Rendering page " + pageIndex + " at " + granted + " DPI instead of " + dpi
+                    + " to stay within the render memory budget");
+        }
+        return granted;
+    }
+
+    /**
+     * PDFBox scratch buffers for a document of {@code size} bytes: on the heap up to its size, at most
+     * {@link DocumentProperties#getScratchMemoryMaxBytes()}, and in temp files beyond that.
+     */
+    MemoryUsageSetting memoryUsage(long size) {
+        final long inMemory = Math.min(Math.max(size, 0), documentProperties.getScratchMemoryMaxBytes());
+        return inMemory > 0 ? MemoryUsageSetting.setupMixed(inMemory) : MemoryUsageSetting.setupTempFileOnly();
+    }
+
+    /**
+     * The most likely of {@link TesseractProperties#getDetectLanguages()} for a page rendered at
+     * {@link TesseractProperties#getDetectDpi()}, from one OCR pass with all of them loaded; the first of
+     * them if none is recognised.
+     */
+    private String detectLanguage(BufferedImage probe, int engineMode, PageDeadline deadline) throws IOException, TesseractException {
+        final List<String> candidates = tesseractProperties.getDetectLanguages();
+        final String text = tesseractProperties.isExternal()
+                // in a process of its own like the OCR of the page, so a crash can't take the JVM down either
+                ? metrics.stage("detect", () -> external.recognize(probe, tesseractProperties.getDetectDpi(),
+                        String.join("+", candidates), -1, engineMode, null, deadline))
+                : detectText(probe, String.join("+", candidates), engineMode, deadline);
+        final String language = LanguageDetector.guess(text, candidates);
+        LOGGER.info("Detected language " + language + " among " + candidates);
+        return language != null ? language : candidates.get(0);
+    }
+
+    private String detectText(BufferedImage probe, String languages, int engineMode, PageDeadline deadline)
+            throws IOException, TesseractException {
+        try (TesseractPool.Lease lease = metrics.stage("engine.wait",
+                () -> tesseractPool.acquire(TesseractPool.EngineKey.of(tesseractProperties, languages, engineMode)))) {
+            try {
+                return metrics.stage("detect", () -> lease.text(probe, tesseractProperties.getDetectDpi(), deadline));
+            } catch (TesseractException | RuntimeException | LinkageError e) {
+                if (!deadline.isExpired()) {
+                    lease.failed();
+                }
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException("Interrupted waiting for a Tesseract engine", e);
+        }
+    }
+
+    private boolean isHeapLow() {
+        final Runtime runtime = Runtime.getRuntime();
+        final long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return free < documentProperties.getImageSpillFreeHeapBytes();
     }
 
     File extractImage(PDDocument document) throws IOException {
-        final PDFRenderer pdfRenderer = new PDFRenderer(document);
-        return toFile(pdfRenderer.renderImageWithDPI(0, tesseractProperties.getDpi(), ImageType.GRAY));
+        return toFile(renderPage(document, 0));
+    }
+
+    BufferedImage renderPage(PDDocument document, int pageIndex) throws IOException {
+        return renderPage(document, pageIndex, tesseractProperties.getDpi(), PageDeadline.NONE);
+    }
+
+    private static BufferedImage renderPage(PDDocument document, int pageIndex, int dpi, PageDeadline deadline) throws IOException {
+        final PDFRenderer pdfRenderer = deadline.renderer(document);
+        return pdfRenderer.renderImageWithDPI(pageIndex, dpi, ImageType.GRAY);
     }
 
     /**
@@ -174,35 +594,408 @@ public class OCRService {
      */
     static File toFile(BufferedImage bufferedImage) throws IOException {
         File file = File.createTempFile("pdfimage", ".png");
-        file.deleteOnExit();
         ImageIO.write(bufferedImage, "png", file);
         return file;
     }
 
     public static File toFile(byte[] bytes) throws IOException {
         File temp = File.createTempFile("pdf", ".pdf");
-        temp.deleteOnExit();
-        IOUtils.copy(new ByteArrayInputStream(bytes), new FileOutputStream(temp));
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+        }
         return temp;
     }
 
-    static <T> List<T> joinToList(List<CompletableFuture<T>> futures) {
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        return futures.stream()
-                .map(CompletableFuture::join)
-                .toList();
+    static ITesseract newTesseractInstance(TesseractProperties properties) {
+        return TesseractPool.EngineKey.of(properties).configure(new Tesseract());
     }
 
-    static ITesseract newTesseractInstance(TesseractProperties properties) {
-        final Tesseract tesseract = new Tesseract();
-        tesseract.setDatapath(properties.getDataPath());
-        tesseract.setLanguage(properties.getLanguage());
-        tesseract.setTessVariable("user_defined_dpi", Integer.toString(properties.getDpi()));
-        return tesseract;
+    /**
+     * A loaded document with scheduler capacity reserved for its pages, or the cached text of a document.
+     */
+    public final class Extraction implements AutoCloseable {
+        private final PDDocument document;
+        private final OcrScheduler.Ticket ticket;
+        private final List<String> cached;
+        private final int pageCount;
+        private final String source;
+        private final ExtractionOptions options;
+        private final List<Runnable> cleanup = new ArrayList<>();
+        private String contentHash;
+        private IntPredicate pages = index -> true;
+        private boolean partial;
+        private boolean documentTimeout = true;
+        private volatile boolean failed;
+        // set when a page was rendered below its DPI to fit the render memory budget
+        private volatile boolean lowered;
+        // set when a limit stopped the run, pages that are still queued or running bail out
+        private volatile boolean stopped;
+        private boolean truncated;
+        private int pagesDone;
+        private long charsDone;
+        private final List<PageText> failedPages = new ArrayList<>();
+        // set once by the first page that detects it, guarded by detecting
+        private volatile String detected;
+        private final Object detecting = new Object();
+
+        private Extraction(PDDocument document, OcrScheduler.Ticket ticket, String source, ExtractionOptions options) {
+            this.document = document;
+            this.ticket = ticket;
+            this.cached = null;
+            this.pageCount = document.getNumberOfPages();
+            this.source = source;
+            this.options = options;
+        }
+
+        private Extraction(List<String> cached, ExtractionOptions options) {
+            this.document = null;
+            this.ticket = null;
+            this.cached = cached;
+            this.pageCount = cached.size();
+            this.source = "cache";
+            this.options = options;
+        }
+
+        private Extraction withContentHash(String contentHash) {
+            this.contentHash = contentHash;
+            return this;
+        }
+
+        /**
+         * Run {@code action} when the extraction is closed, e.g. to delete the file it was loaded from.
+         */
+        public Extraction onClose(Runnable action) {
+            cleanup.add(action);
+            return this;
+        }
+
+        /**
+         * Only process and report the pages whose zero based index matches, e.g. to resume a job.
+         */
+        public Extraction onlyPages(IntPredicate include) {
+            this.pages = include;
+            this.partial = true;
+            return this;
+        }
+
+        /**
+         * Don't stop at {@link SchedulerProperties#getDocumentTimeoutSeconds()}, e.g. for a job nobody waits
+         * on; pages still time out on their own.
+         */
+        public Extraction withoutDocumentTimeout() {
+            this.documentTimeout = false;
+            return this;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        /**
+         * Whether the last run stopped at one of the {@link ExtractionOptions.Limits}, or at
+         * {@link SchedulerProperties#getDocumentTimeoutSeconds()}, with pages left.
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * The pages of the last run that failed or timed out, without text.
+         */
+        public List<PageText> getFailedPages() {
+            return List.copyOf(failedPages);
+        }
+
+        /**
+         * Run the extraction and join the text of all pages.
+         */
+        public ExtractedPdfData collect() throws IOException {
+            final StringBuilder text = new StringBuilder();
+            run(page -> text.append(page.text()));
+            LOGGER.info("Total text length: " + text.length());
+            return new ExtractedPdfData(text.toString(), pageCount, truncated, getFailedPages());
+        }
+
+        /**
+         * Process all pages, handing each one to {@code consumer} in page order as soon as it and all
+         * earlier pages are done. Pages are read lazily from the loaded document and at most
+         * {@link SchedulerProperties#getPageWindow()} of them are submitted but not consumed yet, so peak
+         * memory depends on concurrency rather than on page count.
+         * <p>
+         * Pages outside {@link ExtractionOptions.Limits#pages()} are skipped. Once another limit or the
+         * document timeout is reached the run stops: queued pages are dropped, running ones are cut off at
+         * their next {@link PageDeadline} check and the extraction is {@link #isTruncated() truncated}. A page
+         * that fails or takes longer than {@link SchedulerProperties#getPageTimeoutSeconds()} is handed on
+         * without text and with its {@link PageStatus}.
+         */
+        public void run(PageConsumer consumer) throws IOException {
+            final ExtractionOptions.Limits limits = options.limits();
+            if (cached != null) {
+                for (int i = 0; i < cached.size(); i++) {
+                    if (!pages.test(i) || !limits.includes(i)) {
+                        continue;
+                    }
+                    if (limits.maxPages() > 0 && pagesDone >= limits.maxPages() || outOfBudget(Long.MAX_VALUE)) {
+                        truncated = true;
+                        break;
+                    }
+                    accept(consumer, new PageText(i, cached.get(i)));
+                }
+                return;
+            }
+            long startTime = System.nanoTime();
+            final long budget = limits.timeBudget() != null ? startTime + limits.timeBudget().toNanos() : Long.MAX_VALUE;
+            final int timeout = documentTimeout ? schedulerProperties.getDocumentTimeoutSeconds() : 0;
+            final long deadline = Math.min(budget, timeout > 0 ? startTime + TimeUnit.SECONDS.toNanos(timeout) : Long.MAX_VALUE);
+            final Observation observation = metrics.extraction(source, pageCount);
+            final int window = schedulerProperties.getPageWindow();
+            final Deque<CompletableFuture<PageText>> pending = new ArrayDeque<>();
+            // only complete runs are cached
+            final List<String> texts = contentHash != null && !partial && limits.pages() == null ? new ArrayList<>(pageCount) : null;
+            final PageConsumer done = texts == null ? consumer : page -> {
+                texts.add(page.text());
+                consumer.accept(page);
+            };
+            boolean completed = false;
+            int submitted = 0;
+            try (Observation.Scope scope = observation.openScope()) {
+                boolean running = true;
+                for (int i = 0; i < pageCount && running; i++) {
+                    if (!pages.test(i) || !limits.includes(i)) {
+                        continue;
+                    }
+                    if (limits.maxPages() > 0 && submitted >= limits.maxPages()) {
+                        // the pages already submitted are still wanted
+                        truncated = true;
+                        break;
+                    }
+                    running = !outOfBudget(deadline) && consume(pending, done, window - 1, false, deadline);
+                    if (running) {
+                        pending.addLast(ticket.submit(pageWork(i, observation)));
+                        submitted++;
+                        running = consume(pending, done, 0, true, deadline);
+                    }
+                }
+                if (!running || !consume(pending, done, 0, false, deadline)) {
+                    truncated = true;
+                }
+                completed = true;
+            } catch (IOException | RuntimeException e) {
+                observation.error(e);
+                throw e;
+            } finally {
+                if (!completed || truncated) {
+                    stopped = true;
+                    ticket.cancel();
+                }
+                observation.stop();
+                long durationNanos = System.nanoTime() - startTime;
+                LOGGER.info("Extraction took " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms"
+                        + (truncated ? ", stopped early after " + pagesDone + " page(s)" : ""));
+            }
+            if (texts != null && !failed && !truncated && !lowered) {
+                cache.putDocument(cache.documentKey(contentHash, variant(options)), texts);
+            }
+        }
+
+        /**
+         * Whether the text is long enough or the time is up, so no more pages are wanted.
+         */
+        private boolean outOfBudget(long deadline) {
+            final ExtractionOptions.Limits limits = options.limits();
+            return limits.maxChars() > 0 && charsDone >= limits.maxChars()
+                    || deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+        }
+
+        /**
+         * Hand pending pages to {@code done} in order until at most {@code keep} are left or, with
+         * {@code onlyFinished}, until the next one is still running.
+         *
+         * @return false if the budget ran out with pages still pending
+         */
+        private boolean consume(Deque<CompletableFuture<PageText>> pending, PageConsumer done, int keep,
+                                boolean onlyFinished, long deadline) throws IOException {
+            final ExtractionOptions.Limits limits = options.limits();
+            while (pending.size() > Math.max(0, keep) && (!onlyFinished || pending.peekFirst().isDone())) {
+                if (limits.maxChars() > 0 && charsDone >= limits.maxChars()) {
+                    return false;
+                }
+                final PageText page;
+                if (deadline == Long.MAX_VALUE) {
+                    page = pending.peekFirst().join();
+                } else {
+                    try {
+                        page = pending.peekFirst().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        return false;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for page");
+                    } catch (ExecutionException e) {
+                        throw new CompletionException(e.getCause());
+                    }
+                }
+                pending.pollFirst();
+                accept(done, page);
+            }
+            return true;
+        }
+
+        private void accept(PageConsumer consumer, PageText page) throws IOException {
+            if (page.status() != PageStatus.OK) {
+                failedPages.add(page);
+            }
+            pagesDone++;
+            charsDone += page.text().length();
+            consumer.accept(page);
+        }
+
+        /**
+         * Whether pages have to be rendered for language detection, because it was asked for and no page
+         * has finished detecting yet.
+         */
+        private boolean needsLanguage() {
+            return ExtractionOptions.AUTO.equals(options.language()) && detected == null;
+        }
+
+        /**
+         * The language to OCR the document with: the requested one, or the one detected on the first
+         * {@code probe}, a page rendered for that when {@link #needsLanguage()}.
+         */
+        private String language(BufferedImage probe, PageDeadline deadline) throws IOException, TesseractException {
+            if (!ExtractionOptions.AUTO.equals(options.language())) {
+                return options.language();
+            }
+            synchronized (detecting) {
+                if (detected == null) {
+                    detected = detectLanguage(probe, options.engineMode(), deadline);
+                }
+                return detected;
+            }
+        }
+
+        private Supplier<PageText> pageWork(int index, Observation extraction) {
+            return () -> {
+                if (stopped) {
+                    throw new CancellationException("Extraction stopped");
+                }
+                // the timeout starts once a worker picked the page up, not while it's queued
+                final PageDeadline deadline = PageDeadline.after(Duration.ofSeconds(schedulerProperties.getPageTimeoutSeconds()),
+                        () -> stopped);
+                final Observation page = metrics.page(extraction, index);
+                try (Observation.Scope scope = page.openScope()) {
+                    return extractTextFromPDFPage(this, index, page, deadline);
+                } catch (IOException | TesseractException e) {
+                    page.error(e);
+                    if (stopped) {
+                        throw new CancellationException("Extraction stopped");
+                    }
+                    final PageStatus status = deadline.isTimedOut() ? PageStatus.TIMED_OUT : PageStatus.FAILED;
+                    final String error;
+                    if (status == PageStatus.TIMED_OUT) {
+                        error = "Page timed out after " + schedulerProperties.getPageTimeoutSeconds() + "s";
+                        LOGGER.warning(error + ": page " + index);
+                    } else {
+                        error = e.getMessage() != null ? e.getMessage() : e.toString();
+                        LOGGER.log(Level.SEVERE, e.getMessage(), e);
+                    }
+                    metrics.pageFailed(status);
+                    // don't cache a document with missing pages
+                    failed = true;
+                    return new PageText(index, "", options.layout() ? List.of() : null, status, error);
+                } catch (RuntimeException e) {
+                    page.error(e);
+                    throw e;
+                } finally {
+                    page.stop();
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (document != null) {
+                    ticket.close();
+                    // wait for a page that is still being rendered after a cancelled run
+                    synchronized (document) {
+                        document.close();
+                    }
+                }
+            } finally {
+                cleanup.forEach(Runnable::run);
+            }
+        }
     }
 
-    record PageText(int index, String text) {
+    /**
+     * Receives the pages of an {@link Extraction} in page order.
+     */
+    @FunctionalInterface
+    public interface PageConsumer {
+        void accept(PageText page) throws IOException;
     }
 
-    public record ExtractedPdfData(String text, int pageCount) {}
+    /**
+     * @param lines  the boxes of the page's OCR'd text if they were asked for, see {@link ExtractionOptions#layout()}
+     * @param status whether the page was extracted; only written when it wasn't
+     * @param error  why it wasn't
+     */
+    public record PageText(int index, String text, @JsonInclude(JsonInclude.Include.NON_NULL) List<Layout.Line> lines,
+                           @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = Ok.class) PageStatus status,
+                           @JsonInclude(JsonInclude.Include.NON_NULL) String error) {
+        public PageText(int index, String text, List<Layout.Line> lines) {
+            this(index, text, lines, PageStatus.OK, null);
+        }
+
+        public PageText(int index, String text) {
+            this(index, text, null);
+        }
+
+        /**
+         * Filters {@link PageStatus#OK} out of the JSON of a page.
+         */
+        static final class Ok {
+            @Override
+            public boolean equals(Object value) {
+                return value == PageStatus.OK;
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * How the extraction of a page ended.
+     */
+    public enum PageStatus {
+        OK,
+        /** the page couldn't be rendered or OCRed */
+        FAILED,
+        /** the page took longer than {@link SchedulerProperties#getPageTimeoutSeconds()} */
+        TIMED_OUT;
+
+        @JsonValue
+        public String toJson() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * @param truncated   whether the extraction stopped at one of its {@link ExtractionOptions.Limits} with pages left
+     * @param failedPages the pages that failed or timed out, without text; only written if there are any
+     */
+    public record ExtractedPdfData(String text, int pageCount, boolean truncated,
+                                   @JsonInclude(JsonInclude.Include.NON_EMPTY) List<PageText> failedPages) {
+        public ExtractedPdfData(String text, int pageCount, boolean truncated) {
+            this(text, pageCount, truncated, List.of());
+        }
+
+        public ExtractedPdfData(String text, int pageCount) {
+            this(text, pageCount, false);
+        }
+    }
 }
@@ -0,0 +1,158 @@
+package com.nassiesse.ocr.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Meters and observations of the extraction pipeline.
+ * <p>
+ * Documents, pages and the stages of a page are {@link Observation}s, so each one is both a timer
+ * ({@code ocr.extraction}, {@code ocr.page}, {@code ocr.stage}) and, with a tracing bridge on the
+ * classpath, a span: pages are children of their document and stages children of their page, so a slow
+ * page of a long document can be picked out. Pages are tagged with the strategy the
+ * {@link PageClassifier} picked.
+ */
+@Component
+public class OcrMetrics {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+    // temp files of the service and PDFBox's scratch files
+    private static final String TEMP_FILES = "{upload,pdf,init,PDFBox}*";
+
+    private final MeterRegistry registry;
+    private final ObservationRegistry observations;
+    private final Path tempDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+
+    public OcrMetrics(MeterRegistry registry, ObservationRegistry observations, ResultCache cache, TesseractPool pool) {
+        this.registry = registry;
+        this.observations = observations;
+        Gauge.builder("ocr.temp.disk", this, OcrMetrics::getTempDiskBytes)
+                .description("Size of the temp files of uploads, spilled pages and PDFBox scratch buffers")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ocr.cache.disk", cache, ResultCache::getDiskBytes)
+                .description("Size of the result cache on disk")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ocr.tesseract.engines", pool, TesseractPool::getLive)
+                .description("Initialised Tesseract engines")
+                .tag("state", "live")
+                .register(registry);
+        Gauge.builder("ocr.tesseract.engines", pool, TesseractPool::getIdle)
+                .description("Initialised Tesseract engines")
+                .tag("state", "idle")
+                .register(registry);
+    }
+
+    /**
+     * Work of a stage, which may throw I/O exceptions and one other checked exception, e.g. Tesseract's.
+     */
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T call() throws IOException, E;
+    }
+
+    /**
+     * Time {@code work} as stage {@code name} of the current observation.
+     */
+    public <T, E extends Exception> T stage(String name, Stage<T, E> work) throws IOException, E {
+        final Observation observation = Observation.createNotStarted("ocr.stage", observations)
+                .contextualName(name)
+                .lowCardinalityKeyValue("stage", name)
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            return work.call();
+        } catch (Exception e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    /**
+     * Start the observation of a document, a child of the current observation, e.g. the HTTP request.
+     */
+    Observation extraction(String source, int pageCount) {
+        return Observation.createNotStarted("ocr.extraction", observations)
+                .contextualName("extract " + source)
+                .lowCardinalityKeyValue("source", source)
+                .highCardinalityKeyValue("pages", Integer.toString(pageCount))
+                .start();
+    }
+
+    /**
+     * Start the observation of a page. Pages run on scheduler threads, so the document's observation is
+     * passed as parent explicitly.
+     */
+    Observation page(Observation extraction, int index) {
+        return Observation.createNotStarted("ocr.page", observations)
+                .contextualName("page " + index)
+                .parentObservation(extraction)
+                .lowCardinalityKeyValue("strategy", "unknown")
+                .lowCardinalityKeyValue("cached", "false")
+                .highCardinalityKeyValue("page", Integer.toString(index))
+                .start();
+    }
+
+    /**
+     * Count a document's bytes by where it came from: upload, s3 or file.
+     */
+    void documentBytes(String source, long bytes) {
+        if (bytes >= 0) {
+            DistributionSummary.builder("ocr.document.size")
+                    .description("Size of the documents processed")
+                    .baseUnit("bytes")
+                    .tag("source", source)
+                    .register(registry)
+                    .record(bytes);
+        }
+    }
+
+    /**
+     * Count a page that couldn't be served from its text layer alone.
+     */
+    void fallback(PageClassifier.Strategy strategy, String reason) {
+        Counter.builder("ocr.fallbacks")
+                .description("Pages that needed OCR, by strategy and the reason the text layer wasn't enough")
+                .tag("strategy", strategy.name().toLowerCase())
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    void pageFailed(OCRService.PageStatus status) {
+        Counter.builder("ocr.page.failures")
+                .description("Pages whose extraction failed or timed out and that were returned without text")
+                .tag("status", status.toJson())
+                .register(registry)
+                .increment();
+    }
+
+    public long getTempDiskBytes() {
+        long bytes = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tempDirectory, TEMP_FILES)) {
+            for (Path file : files) {
+                try {
+                    bytes += Files.size(file);
+                } catch (IOException e) {
+                    // deleted in the meantime
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to list " + tempDirectory, e);
+        }
+        return bytes;
+    }
+}
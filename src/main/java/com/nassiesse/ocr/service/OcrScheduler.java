@@ -0,0 +1,269 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.SchedulerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs the CPU bound part of a request (rendering, text stripping and OCR) on a fixed set of threads.
+ * <p>
+ * Every request is admitted with the number of pages it can have submitted at once, its page window
+ * rather than its page count, so one long document doesn't use up the capacity. Admission fails with a
+ * {@link SchedulerBusyException} once {@link SchedulerProperties#getMaxInFlightPages()} pages are queued
+ * or running, unless nothing is in flight, so a single oversized document still gets processed.
+ * Workers take pages from the admitted requests round-robin, so a large PDF can't starve small ones.
+ */
+@Component
+public class OcrScheduler implements DisposableBean {
+    private final int maxInFlightPages;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    // requests with queued pages, in the order they get their next turn; guarded by lock
+    private final Deque<Ticket> ready = new ArrayDeque<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Timer waitTimer;
+    private final Counter rejected;
+    private int inFlight;
+    private int queued;
+    private int running;
+    private boolean shutdown;
+
+    @Autowired
+    public OcrScheduler(SchedulerProperties properties, MeterRegistry registry) {
+        this(properties.getCpuThreads(), properties.getMaxInFlightPages(), registry);
+    }
+
+    OcrScheduler(int threads, int maxInFlightPages, MeterRegistry registry) {
+        this.maxInFlightPages = maxInFlightPages;
+        this.waitTimer = Timer.builder("ocr.scheduler.wait")
+                .description("Time pages spend queued before a CPU worker picks them up")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.rejected = Counter.builder("ocr.scheduler.rejected")
+                .description("Requests turned away because too many pages were in flight")
+                .register(registry);
+        Gauge.builder("ocr.scheduler.queued", this, OcrScheduler::getQueued)
+                .description("Pages waiting for a CPU worker")
+                .register(registry);
+        Gauge.builder("ocr.scheduler.running", this, OcrScheduler::getRunning)
+                .description("Pages being rendered or OCRed")
+                .register(registry);
+        Gauge.builder("ocr.scheduler.inflight", this, OcrScheduler::getInFlight)
+                .description("Pages admitted and not finished yet")
+                .register(registry);
+        for (int i = 0; i < threads; i++) {
+            final Thread worker = new Thread(this::work, "ocr-cpu-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Reserve room for {@code pages} pages of one request. Pages submitted beyond that are counted as they
+     * come, which stays within the reservation as long as the request waits for its earlier pages.
+     *
+     * @throws SchedulerBusyException if the in-flight page limit would be exceeded
+     */
+    public Ticket admit(int pages) {
+        lock.lock();
+        try {
+            if (inFlight > 0 && inFlight + pages > maxInFlightPages) {
+                rejected.increment();
+                throw new SchedulerBusyException("OCR queue is full: " + inFlight + " page(s) in flight");
+            }
+            inFlight += pages;
+            return new Ticket(pages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            final Task<?> task;
+            lock.lock();
+            try {
+                while (ready.isEmpty() && !shutdown) {
+                    work.awaitUninterruptibly();
+                }
+                if (shutdown) {
+                    return;
+                }
+                final Ticket ticket = ready.pollFirst();
+                task = ticket.tasks.pollFirst();
+                if (!ticket.tasks.isEmpty()) {
+                    ready.addLast(ticket);
+                }
+                queued--;
+                running++;
+            } finally {
+                lock.unlock();
+            }
+            waitTimer.record(System.nanoTime() - task.submitted, TimeUnit.NANOSECONDS);
+            try {
+                task.run();
+            } finally {
+                lock.lock();
+                try {
+                    running--;
+                    task.ticket.finished();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Ticket ticket : ready) {
+                ticket.tasks.forEach(task -> task.future.completeExceptionally(
+                        new IllegalStateException("OCR scheduler is shut down")));
+                ticket.tasks.clear();
+            }
+            ready.clear();
+            queued = 0;
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Capacity reserved for one request. Closing the ticket gives back the reservation of pages
+     * that were never submitted.
+     */
+    public final class Ticket implements AutoCloseable {
+        // guarded by the scheduler lock
+        private final Deque<Task<?>> tasks = new ArrayDeque<>();
+        private int reserved;
+
+        private Ticket(int reserved) {
+            this.reserved = reserved;
+        }
+
+        public <T> CompletableFuture<T> submit(Supplier<T> supplier) {
+            final Task<T> task = new Task<>(this, supplier);
+            lock.lock();
+            try {
+                if (shutdown) {
+                    throw new IllegalStateException("OCR scheduler is shut down");
+                }
+                if (reserved == 0) {
+                    // more pages than admitted, count them anyway so the gauges stay honest
+                    inFlight++;
+                } else {
+                    reserved--;
+                }
+                if (tasks.isEmpty()) {
+                    ready.addLast(this);
+                }
+                tasks.addLast(task);
+                queued++;
+                work.signal();
+            } finally {
+                lock.unlock();
+            }
+            return task.future;
+        }
+
+        private void finished() {
+            inFlight--;
+        }
+
+        /**
+         * Drop the pages of this request that haven't started yet. Their futures complete with a
+         * {@link CancellationException}.
+         */
+        public void cancel() {
+            lock.lock();
+            try {
+                ready.remove(this);
+                queued -= tasks.size();
+                inFlight -= tasks.size();
+                tasks.forEach(task -> task.future.completeExceptionally(new CancellationException("Request cancelled")));
+                tasks.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                inFlight -= reserved;
+                reserved = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Task<T> {
+        private final Ticket ticket;
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long submitted = System.nanoTime();
+
+        private Task(Ticket ticket, Supplier<T> work) {
+            this.ticket = ticket;
+            this.work = work;
+        }
+
+        private void run() {
+            try {
+                future.complete(work.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.ClassifierProperties;
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.apache.pdfbox.util.Matrix;
+import org.springframework.stereotype.Component;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides per page whether its text layer can be used as is, which of its images need OCR, or whether
+ * the whole page has to be rendered and OCRed.
+ * <p>
+ * The text layer is used when enough of its characters and words are well-formed, see
+ * {@link #textQuality(String)}. Images covering at least {@link ClassifierProperties#getMinImageCoverage()}
+ * of the page are OCRed unless the text layer already has characters over them, as a scanner's OCR layer
+ * does. That way the scanned body of a page with a text header isn't lost, and a scan with a usable
+ * OCR layer isn't OCRed again.
+ */
+@Component
+public class PageClassifier {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+    private static final double POINTS_PER_INCH = 72;
+    // share of junk text outside the images above which content outside of them is assumed, see classify
+    private static final double MAX_GLYPHS_OUTSIDE_IMAGES = 0.1;
+
+    private final ClassifierProperties properties;
+
+    public PageClassifier(ClassifierProperties properties) {
+        this.properties = properties;
+    }
+
+    public enum Strategy {
+        /** the text layer is all there is to the page */
+        TEXT,
+        /** render the page and OCR all of it */
+        OCR_PAGE,
+        /** keep the text layer and OCR the images it doesn't cover */
+        OCR_IMAGES
+    }
+
+    /**
+     * An image drawn on the page, with its bounding box in PDF user space.
+     */
+    record Region(PDImage image, Rectangle2D bounds, boolean axisAligned) {
+    }
+
+    /**
+     * @param reason  why the strategy was picked: text, no_text, junk_text, rotated or uncovered_images
+     * @param text    the usable part of the text layer, blank when it was junk
+     * @param regions the images to OCR, top to bottom, for {@link Strategy#OCR_IMAGES}
+     */
+    record Analysis(Strategy strategy, String reason, String text, List<Region> regions, double textQuality,
+                    double imageCoverage) {
+    }
+
+    /**
+     * Pixels to OCR and where they are on the page.
+     */
+    record PageImage(BufferedImage image, Layout.Placement placement) {
+    }
+
+    /**
+     * Classify a page. Not thread safe with respect to the document, the caller holds its lock.
+     */
+    Analysis classify(PDDocument document, int pageIndex) throws InterruptedIOException {
+        return classify(document, pageIndex, PageDeadline.NONE);
+    }
+
+    /**
+     * Like {@link #classify(PDDocument, int)}, giving up once {@code deadline} expires.
+     */
+    Analysis classify(PDDocument document, int pageIndex, PageDeadline deadline) throws InterruptedIOException {
+        final PDPage page = document.getPage(pageIndex);
+        final PDRectangle box = page.getCropBox();
+        final Rectangle2D pageBounds = new Rectangle2D.Float(box.getLowerLeftX(), box.getLowerLeftY(), box.getWidth(), box.getHeight());
+        final double pageArea = area(pageBounds);
+
+        final List<Region> regions = new ArrayList<>();
+        double coverage = 0;
+        try {
+            final ImageFinder finder = new ImageFinder(page, deadline);
+            finder.processPage(page);
+            for (Region region : finder.regions) {
+                final double area = area(region.bounds().createIntersection(pageBounds));
+                if (pageArea > 0 && area >= properties.getMinImageCoverage() * pageArea) {
+                    regions.add(region);
+                    coverage += area / pageArea;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // a page cut off by its deadline isn't a page without images
+            deadline.check();
+            LOGGER.log(Level.WARNING, "Image analysis failed", e);
+        }
+        coverage = Math.min(1, coverage);
+
+        String text = "";
+        List<Point2D> glyphs = List.of();
+        try {
+            final GlyphStripper stripper = new GlyphStripper(deadline);
+            stripper.setStartPage(pageIndex + 1);
+            stripper.setEndPage(pageIndex + 1);
+            text = stripper.getText(document).trim();
+            glyphs = stripper.glyphs;
+        } catch (IOException | RuntimeException e) {
+            deadline.check();
+            LOGGER.log(Level.WARNING, "Text stripping failed", e);
+        }
+        final double quality = textQuality(text);
+        final boolean usable = !text.isBlank() && quality >= properties.getMinTextQuality();
+
+        final List<Region> uncovered = new ArrayList<>();
+        for (Region region : regions) {
+            if (!usable || charsPerSquareInch(region.bounds(), glyphs) < properties.getMinCharsPerSquareInch()) {
+                uncovered.add(region);
+            }
+        }
+        uncovered.sort(Comparator.comparingDouble((Region region) -> -region.bounds().getMaxY())
+                .thenComparingDouble(region -> region.bounds().getMinX()));
+
+        final Strategy strategy;
+        String reason = usable ? "uncovered_images" : text.isBlank() ? "no_text" : "junk_text";
+        if (uncovered.isEmpty()) {
+            strategy = usable ? Strategy.TEXT : Strategy.OCR_PAGE;
+            reason = usable ? "text" : reason;
+        } else if (page.getRotation() != 0) {
+            // the renderer turns the page upright, the embedded images would need turning as well
+            strategy = Strategy.OCR_PAGE;
+            reason = "rotated";
+        } else if (!usable && share(glyphs, uncovered) < 1 - MAX_GLYPHS_OUTSIDE_IMAGES) {
+            // junk text next to the images, so there is something besides them worth reading
+            strategy = Strategy.OCR_PAGE;
+        } else {
+            strategy = Strategy.OCR_IMAGES;
+        }
+        LOGGER.info("Page " + pageIndex + ": " + strategy + " (" + reason + ", text length " + text.length()
+                + ", quality " + String.format("%.2f", quality) + ", image coverage " + String.format("%.2f", coverage)
+                + ", images to OCR " + (strategy == Strategy.OCR_IMAGES ? uncovered.size() : 0) + ")");
+        return new Analysis(strategy, reason, usable ? text : "", strategy == Strategy.OCR_IMAGES ? uncovered : List.of(),
+                quality, coverage);
+    }
+
+    /**
+     * The pixels of the regions of an {@link Strategy#OCR_IMAGES} analysis, from the embedded images
+     * where possible and cut out of a rendering of the page at {@code dpi} otherwise. Not thread safe
+     * with respect to the document, the caller holds its lock.
+     */
+    List<PageImage> images(PDDocument document, int pageIndex, Analysis analysis, int dpi) throws IOException {
+        return images(document, pageIndex, analysis, dpi, PageDeadline.NONE);
+    }
+
+    /**
+     * Like {@link #images(PDDocument, int, Analysis, int)}, giving up once {@code deadline} expires.
+     */
+    List<PageImage> images(PDDocument document, int pageIndex, Analysis analysis, int dpi, PageDeadline deadline) throws IOException {
+        final PDRectangle box = document.getPage(pageIndex).getCropBox();
+        final List<PageImage> images = new ArrayList<>();
+        BufferedImage rendered = null;
+        for (Region region : analysis.regions()) {
+            final BufferedImage image = properties.isNativeImages() && region.axisAligned() ? nativeImage(region, dpi) : null;
+            if (image != null) {
+                final Rectangle2D bounds = region.bounds();
+                images.add(new PageImage(image, Layout.Placement.of(bounds.getMinX() - box.getLowerLeftX(),
+                        box.getUpperRightY() - bounds.getMaxY(), bounds.getWidth() / image.getWidth(),
+                        bounds.getHeight() / image.getHeight())));
+                continue;
+            }
+            deadline.check();
+            if (rendered == null) {
+                rendered = deadline.renderer(document).renderImageWithDPI(pageIndex, dpi, ImageType.GRAY);
+            }
+            final PageImage cropped = crop(rendered, box, region.bounds(), dpi);
+            if (cropped != null) {
+                images.add(cropped);
+            }
+        }
+        return images;
+    }
+
+    private BufferedImage nativeImage(Region region, int dpi) {
+        try {
+            final BufferedImage image = region.image().getImage();
+            if (image == null) {
+                return null;
+            }
+            final double nativeDpi = image.getWidth() * POINTS_PER_INCH / region.bounds().getWidth();
+            if (nativeDpi < properties.getMinNativeDpi() || nativeDpi > properties.getMaxNativeDpi()) {
+                return scale(image, dpi / nativeDpi);
+            }
+            return image;
+        } catch (IOException | RuntimeException e) {
+            // e.g. JBIG2 or JPEG 2000 without a decoder on the classpath
+            LOGGER.log(Level.WARNING, "Failed to decode embedded image, rendering it instead", e);
+            return null;
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, double factor) {
+        final int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        final int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        final BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static PageImage crop(BufferedImage rendered, PDRectangle box, Rectangle2D bounds, int dpi) {
+        final double scale = dpi / POINTS_PER_INCH;
+        final Rectangle pixels = new Rectangle(
+                (int) Math.floor((bounds.getMinX() - box.getLowerLeftX()) * scale),
+                (int) Math.floor((box.getUpperRightY() - bounds.getMaxY()) * scale),
+                (int) Math.ceil(bounds.getWidth() * scale),
+                (int) Math.ceil(bounds.getHeight() * scale))
+                .intersection(new Rectangle(rendered.getWidth(), rendered.getHeight()));
+        return pixels.isEmpty() ? null : new PageImage(rendered.getSubimage(pixels.x, pixels.y, pixels.width, pixels.height),
+                Layout.Placement.of(pixels.x / scale, pixels.y / scale, 1 / scale, 1 / scale));
+    }
+
+    private static double charsPerSquareInch(Rectangle2D bounds, List<Point2D> glyphs) {
+        final long inside = glyphs.stream().filter(bounds::contains).count();
+        return inside / (area(bounds) / (POINTS_PER_INCH * POINTS_PER_INCH));
+    }
+
+    private static double share(List<Point2D> glyphs, List<Region> regions) {
+        if (glyphs.isEmpty()) {
+            return 1;
+        }
+        final long inside = glyphs.stream()
+                .filter(glyph -> regions.stream().anyMatch(region -> region.bounds().contains(glyph)))
+                .count();
+        return (double) inside / glyphs.size();
+    }
+
+    private static double area(Rectangle2D bounds) {
+        return bounds.isEmpty() ? 0 : bounds.getWidth() * bounds.getHeight();
+    }
+
+    /**
+     * Share of well-formed text between 0 and 1: the lower of the share of characters that aren't
+     * replacement, control or private use characters, and the share of words whose letters and digits
+     * look like a word rather than misread glyphs ("l0ve", "tHe").
+     */
+    static double textQuality(String text) {
+        int chars = 0;
+        int goodChars = 0;
+        int words = 0;
+        int goodWords = 0;
+        for (String token : text.split("\\s+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            words++;
+            boolean clean = true;
+            for (int i = 0; i < token.length(); ) {
+                final int cp = token.codePointAt(i);
+                chars++;
+                if (isWellFormed(cp)) {
+                    goodChars++;
+                } else {
+                    clean = false;
+                }
+                i += Character.charCount(cp);
+            }
+            if (clean && isWordlike(token)) {
+                goodWords++;
+            }
+        }
+        if (chars == 0) {
+            return 0;
+        }
+        return Math.min((double) goodChars / chars, (double) goodWords / words);
+    }
+
+    private static boolean isWellFormed(int cp) {
+        if (cp == 0xFFFD || Character.isISOControl(cp)) {
+            return false;
+        }
+        final int type = Character.getType(cp);
+        return type != Character.PRIVATE_USE && type != Character.UNASSIGNED && type != Character.SURROGATE;
+    }
+
+    private static boolean isWordlike(String token) {
+        int i = 0;
+        while (i < token.length()) {
+            if (!Character.isLetterOrDigit(token.codePointAt(i))) {
+                i += Character.charCount(token.codePointAt(i));
+                continue;
+            }
+            final int start = i;
+            while (i < token.length() && Character.isLetterOrDigit(token.codePointAt(i))) {
+                i += Character.charCount(token.codePointAt(i));
+            }
+            if (!isWord(token.substring(start, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWord(String word) {
+        int switches = 0;
+        int upper = 0;
+        int lower = 0;
+        boolean digit = Character.isDigit(word.codePointAt(0));
+        for (int i = 0; i < word.length(); ) {
+            final int cp = word.codePointAt(i);
+            if (Character.isDigit(cp) != digit) {
+                switches++;
+                digit = !digit;
+            }
+            if (Character.isUpperCase(cp)) {
+                upper++;
+            } else if (Character.isLowerCase(cp)) {
+                lower++;
+            }
+            i += Character.charCount(cp);
+        }
+        // "3rd" and "mp3" are fine, letters and digits taking turns more often aren't
+        if (switches > 1) {
+            return false;
+        }
+        // lower case, upper case or capitalised
+        return upper == 0 || lower == 0 || (upper == 1 && Character.isUpperCase(word.codePointAt(0)));
+    }
+
+    private static final class ImageFinder extends PDFGraphicsStreamEngine {
+        private final List<Region> regions = new ArrayList<>();
+        private final PageDeadline deadline;
+
+        private ImageFinder(PDPage page, PageDeadline deadline) {
+            super(page);
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+            deadline.check();
+            super.processOperator(operator, operands);
+        }
+
+        @Override
+        public void drawImage(PDImage image) {
+            if (image.isStencil()) {
+                return;
+            }
+            // the image fills the unit square of its transformation matrix
+            final Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+            final Rectangle2D bounds = ctm.createAffineTransform().createTransformedShape(new Rectangle(0, 0, 1, 1)).getBounds2D();
+            final boolean axisAligned = ctm.getShearX() == 0 && ctm.getShearY() == 0
+                    && ctm.getScaleX() > 0 && ctm.getScaleY() > 0;
+            regions.add(new Region(image, bounds, axisAligned));
+        }
+
+        @Override
+        public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) {
+        }
+
+        @Override
+        public void clip(int windingRule) {
+        }
+
+        @Override
+        public void moveTo(float x, float y) {
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+        }
+
+        @Override
+        public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        }
+
+        @Override
+        public Point2D getCurrentPoint() {
+            return new Point2D.Float();
+        }
+
+        @Override
+        public void closePath() {
+        }
+
+        @Override
+        public void endPath() {
+        }
+
+        @Override
+        public void strokePath() {
+        }
+
+        @Override
+        public void fillPath(int windingRule) {
+        }
+
+        @Override
+        public void fillAndStrokePath(int windingRule) {
+        }
+
+        @Override
+        public void shadingFill(COSName shadingName) {
+        }
+    }
+
+    /**
+     * Text stripper that also records where each glyph is, in PDF user space.
+     */
+    private static final class GlyphStripper extends PDFTextStripper {
+        private final List<Point2D> glyphs = new ArrayList<>();
+        private final PageDeadline deadline;
+
+        private GlyphStripper(PageDeadline deadline) throws IOException {
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+            deadline.check();
+            super.processOperator(operator, operands);
+        }
+
+        @Override
+        protected void processTextPosition(TextPosition text) {
+            super.processTextPosition(text);
+            final Matrix matrix = text.getTextMatrix();
+            glyphs.add(new Point2D.Float(matrix.getTranslateX(), matrix.getTranslateY()));
+        }
+    }
+}
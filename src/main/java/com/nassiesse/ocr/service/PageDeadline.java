@@ -0,0 +1,98 @@
+package com.nassiesse.ocr.service;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.rendering.PageDrawer;
+import org.apache.pdfbox.rendering.PageDrawerParameters;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * When the work on a page has to stop: once it took longer than its timeout, or once the extraction it
+ * belongs to was stopped.
+ * <p>
+ * It is checked between the stages of a page, before every content stream operator by the renderer and by
+ * the classifier's passes over the page, and by Tesseract while it recognises, so a pathological page is cut off wherever it spends its time instead of
+ * holding up its request.
+ */
+final class PageDeadline {
+    static final PageDeadline NONE = new PageDeadline(Long.MAX_VALUE, () -> false);
+
+    // System.nanoTime() at which the page times out, Long.MAX_VALUE for never
+    private final long deadline;
+    private final BooleanSupplier stopped;
+
+    private PageDeadline(long deadline, BooleanSupplier stopped) {
+        this.deadline = deadline;
+        this.stopped = stopped;
+    }
+
+    /**
+     * A deadline {@code timeout} from now, or none if it's zero, that also expires once {@code stopped}.
+     */
+    static PageDeadline after(Duration timeout, BooleanSupplier stopped) {
+        return new PageDeadline(timeout.isZero() || timeout.isNegative() ? Long.MAX_VALUE
+                : System.nanoTime() + timeout.toNanos(), stopped);
+    }
+
+    boolean isStopped() {
+        return stopped.getAsBoolean();
+    }
+
+    boolean isTimedOut() {
+        return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+    }
+
+    boolean isExpired() {
+        return isStopped() || isTimedOut();
+    }
+
+    /**
+     * Milliseconds until the page times out, {@link Long#MAX_VALUE} if it never does.
+     */
+    long remainingMillis() {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, (deadline - System.nanoTime()) / 1_000_000);
+    }
+
+    /**
+     * @throws CancellationException  if the extraction was stopped
+     * @throws InterruptedIOException if the page timed out
+     */
+    void check() throws InterruptedIOException {
+        if (isStopped()) {
+            throw new CancellationException("Extraction stopped");
+        }
+        if (isTimedOut()) {
+            throw new InterruptedIOException("Page timed out");
+        }
+    }
+
+    /**
+     * A renderer for {@code document} that gives up drawing a page once this deadline expires.
+     */
+    PDFRenderer renderer(PDDocument document) {
+        if (this == NONE) {
+            return new PDFRenderer(document);
+        }
+        return new PDFRenderer(document) {
+            @Override
+            protected PageDrawer createPageDrawer(PageDrawerParameters parameters) throws IOException {
+                return new PageDrawer(parameters) {
+                    @Override
+                    protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+                        // PDFBox logs and skips failed form XObjects, the next operator outside them fails again
+                        check();
+                        super.processOperator(operator, operands);
+                    }
+                };
+            }
+        };
+    }
+}
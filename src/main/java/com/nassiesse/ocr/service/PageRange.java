@@ -0,0 +1,55 @@
+package com.nassiesse.ocr.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages asked for the way a print dialog takes them, one based: {@code 1-3,7,10-} is pages 1 to 3, page 7
+ * and page 10 to the end.
+ */
+public record PageRange(List<Span> spans) {
+
+    /**
+     * @throws IllegalArgumentException if {@code spec} isn't a list of pages and ranges
+     */
+    public static PageRange parse(String spec) {
+        final List<Span> spans = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            final String span = part.strip();
+            final int dash = span.indexOf('-');
+            try {
+                if (dash < 0) {
+                    final int page = Integer.parseInt(span);
+                    spans.add(new Span(page, page));
+                } else {
+                    final int first = Integer.parseInt(span.substring(0, dash).strip());
+                    final String last = span.substring(dash + 1).strip();
+                    spans.add(new Span(first, last.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(last)));
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page range: " + spec);
+            }
+        }
+        for (Span span : spans) {
+            if (span.first() < 1 || span.last() < span.first()) {
+                throw new IllegalArgumentException("Invalid page range: " + spec);
+            }
+        }
+        return new PageRange(List.copyOf(spans));
+    }
+
+    /**
+     * Whether the page with the zero based {@code index} is in the range.
+     */
+    public boolean contains(int index) {
+        for (Span span : spans) {
+            if (index + 1 >= span.first() && index + 1 <= span.last()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public record Span(int first, int last) {
+    }
+}
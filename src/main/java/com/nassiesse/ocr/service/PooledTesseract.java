@@ -0,0 +1,291 @@
+package com.nassiesse.ocr.service;
+
+import com.sun.jna.Pointer;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TessAPI;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Tesseract} that keeps its native TessBaseAPI handle between {@code doOCR} calls.
+ * <p>
+ * The stock implementation creates the handle, loads the traineddata and deletes the handle again on
+ * every call. Here the handle is created on first use, only cleared between pages and released by
+ * {@link #close()} when the pool retires the engine.
+ * <p>
+ * Rendered pages are passed as raw grey pixels through a buffer that is reused for every page the
+ * engine processes, so nothing is PNG encoded or decoded on the way. Their resolution is set per image,
+ * as pages are rendered at different DPIs.
+ * <p>
+ * The page segmentation mode can be changed between pages of an initialised engine; the stock
+ * implementation only applies it when loading the traineddata.
+ * <p>
+ * Recognition runs with a monitor whose cancel callback Tesseract polls while it works, so a page can be
+ * given up once its {@link PageDeadline} expires.
+ */
+class PooledTesseract extends Tesseract {
+    private ByteBuffer pixels;
+    private byte[] row;
+    private boolean initialized;
+    private int pageSegMode = -1;
+    private int defaultPageSegMode;
+    private int pages;
+    private boolean failed;
+    private PageDeadline deadline = PageDeadline.NONE;
+    // a field, so JNA doesn't collect the callback while Tesseract holds on to it
+    private final ITessAPI.TessCancelFunc cancel = (cancelThis, words) -> deadline.isExpired();
+
+    @Override
+    public String doOCR(BufferedImage image) throws TesseractException {
+        return doOCR(image, null);
+    }
+
+    /**
+     * Hands the 8-bit grey pixels straight to Tesseract through a buffer owned by this engine, instead
+     * of the stock conversion that allocates a new direct buffer per page.
+     */
+    @Override
+    public String doOCR(BufferedImage image, Rectangle rect) throws TesseractException {
+        return recognize(image, rect, 0, null);
+    }
+
+    /**
+     * The text of {@code image}, whose resolution is {@code dpi}.
+     */
+    String text(BufferedImage image, int dpi) throws TesseractException {
+        return recognize(image, null, dpi, null);
+    }
+
+    /**
+     * Like {@link #text(BufferedImage, int)}, and add the lines and words recognised in the same pass to
+     * {@code lines}, with their boxes in pixels of {@code image}.
+     */
+    String recognize(BufferedImage image, int dpi, List<Layout.Line> lines) throws TesseractException {
+        return recognize(image, null, dpi, lines);
+    }
+
+    /**
+     * @param dpi   the resolution of the image, for Tesseract's size heuristics; 0 lets it guess
+     * @param lines where to add the lines and words, {@code null} if they aren't wanted
+     */
+    private String recognize(BufferedImage image, Rectangle rect, int dpi, List<Layout.Line> lines) throws TesseractException {
+        final BufferedImage gray = toGray(image);
+        final ByteBuffer buffer = pixels(gray);
+        init();
+        setTessVariables();
+        try {
+            setImage(gray.getWidth(), gray.getHeight(), buffer, rect, 8);
+            final TessAPI api = getAPI();
+            if (dpi > 0) {
+                // raw pixels carry no resolution, and pages come at whatever DPI they were rendered at
+                api.TessBaseAPISetSourceResolution(getHandle(), dpi);
+            }
+            recognize(api);
+            // the text comes from the recognition that was just done, not from another one
+            final String text = text(api, api.TessBaseAPIGetUTF8Text(getHandle()));
+            if (lines != null) {
+                lines.addAll(lines(api));
+            }
+            return text;
+        } catch (TesseractException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TesseractException(e);
+        } finally {
+            dispose();
+        }
+    }
+
+    /**
+     * Recognise the image that was set, cancelling once the deadline expires.
+     */
+    private void recognize(TessAPI api) throws TesseractException {
+        if (deadline == PageDeadline.NONE) {
+            if (api.TessBaseAPIRecognize(getHandle(), null) != 0) {
+                throw new TesseractException("Recognition failed");
+            }
+            return;
+        }
+        final ITessAPI.ETEXT_DESC monitor = api.TessMonitorCreate();
+        try {
+            api.TessMonitorSetCancelFunc(monitor, cancel);
+            final long remaining = deadline.remainingMillis();
+            if (remaining != Long.MAX_VALUE) {
+                api.TessMonitorSetDeadlineMSecs(monitor, (int) Math.min(remaining, Integer.MAX_VALUE));
+            }
+            final int status = api.TessBaseAPIRecognize(getHandle(), monitor);
+            // a cancelled recognition may still report success with the words it got to
+            if (deadline.isExpired()) {
+                throw new TesseractException("Recognition cancelled");
+            }
+            if (status != 0) {
+                throw new TesseractException("Recognition failed");
+            }
+        } finally {
+            api.TessMonitorDelete(monitor);
+        }
+    }
+
+    private List<Layout.Line> lines(TessAPI api) {
+        final List<Layout.Line> lines = new ArrayList<>();
+        final ITessAPI.TessResultIterator results = api.TessBaseAPIGetIterator(getHandle());
+        if (results == null) {
+            return lines;
+        }
+        try {
+            final ITessAPI.TessPageIterator page = api.TessResultIteratorGetPageIterator(results);
+            final IntBuffer left = IntBuffer.allocate(1);
+            final IntBuffer top = IntBuffer.allocate(1);
+            final IntBuffer right = IntBuffer.allocate(1);
+            final IntBuffer bottom = IntBuffer.allocate(1);
+            api.TessPageIteratorBegin(page);
+            List<Layout.Word> words = null;
+            do {
+                if (words == null || api.TessPageIteratorIsAtBeginningOf(page, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE) == ITessAPI.TRUE) {
+                    words = new ArrayList<>();
+                    if (api.TessPageIteratorBoundingBox(page, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE, left, top, right, bottom) == ITessAPI.TRUE) {
+                        lines.add(new Layout.Line(left.get(0), top.get(0), right.get(0) - left.get(0), bottom.get(0) - top.get(0),
+                                Math.round(api.TessResultIteratorConfidence(results, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE)), words));
+                    }
+                }
+                final String word = text(api, api.TessResultIteratorGetUTF8Text(results, ITessAPI.TessPageIteratorLevel.RIL_WORD));
+                if (word.isBlank() || api.TessPageIteratorBoundingBox(page, ITessAPI.TessPageIteratorLevel.RIL_WORD, left, top, right, bottom) == ITessAPI.FALSE) {
+                    continue;
+                }
+                words.add(new Layout.Word(word.strip(), left.get(0), top.get(0), right.get(0) - left.get(0), bottom.get(0) - top.get(0),
+                        Math.round(api.TessResultIteratorConfidence(results, ITessAPI.TessPageIteratorLevel.RIL_WORD))));
+            } while (api.TessPageIteratorNext(page, ITessAPI.TessPageIteratorLevel.RIL_WORD) == ITessAPI.TRUE);
+        } finally {
+            api.TessResultIteratorDelete(results);
+        }
+        lines.removeIf(line -> line.words().isEmpty());
+        return lines;
+    }
+
+    private static String text(TessAPI api, Pointer text) {
+        if (text == null) {
+            return "";
+        }
+        try {
+            return text.getString(0, StandardCharsets.UTF_8.name());
+        } finally {
+            api.TessDeleteText(text);
+        }
+    }
+
+    /**
+     * The 8-bit grey pixels of {@code gray}, in a buffer owned by this engine.
+     */
+    private ByteBuffer pixels(BufferedImage gray) {
+        final int width = gray.getWidth();
+        final int height = gray.getHeight();
+        final ByteBuffer buffer = pixels(width * height);
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        final Raster raster = gray.getRaster();
+        for (int y = 0; y < height; y++) {
+            raster.getDataElements(0, y, width, 1, row);
+            buffer.put(row, 0, width);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer pixels(int size) {
+        if (pixels == null || pixels.capacity() < size) {
+            pixels = ByteBuffer.allocateDirect(size);
+        }
+        pixels.clear();
+        return pixels;
+    }
+
+    private static BufferedImage toGray(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        final BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D graphics = gray.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return gray;
+    }
+
+    /**
+     * Segment the following pages with {@code mode}, or with the engine's default if it's negative.
+     */
+    @Override
+    public void setPageSegMode(int mode) {
+        // not passed on, so the stock init leaves the engine's default alone and we can go back to it
+        pageSegMode = mode;
+        if (initialized) {
+            getAPI().TessBaseAPISetPageSegMode(getHandle(), mode >= 0 ? mode : defaultPageSegMode);
+        }
+    }
+
+    @Override
+    protected void init() {
+        if (!initialized) {
+            super.init();
+            defaultPageSegMode = getAPI().TessBaseAPIGetPageSegMode(getHandle());
+            initialized = true;
+            setPageSegMode(pageSegMode);
+        }
+    }
+
+    @Override
+    protected void dispose() {
+        // keep the loaded model, just drop the image and recognition results of the last page
+        if (initialized) {
+            getAPI().TessBaseAPIClear(getHandle());
+        }
+    }
+
+    void close() {
+        pixels = null;
+        if (initialized) {
+            initialized = false;
+            super.dispose();
+        }
+    }
+
+    /**
+     * Give up recognising pages once {@code deadline} expires, {@link PageDeadline#NONE} for never.
+     */
+    void setDeadline(PageDeadline deadline) {
+        this.deadline = deadline;
+    }
+
+    boolean isInitialized() {
+        return initialized;
+    }
+
+    int getPages() {
+        return pages;
+    }
+
+    void pageDone() {
+        pages++;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    void markFailed() {
+        failed = true;
+    }
+}
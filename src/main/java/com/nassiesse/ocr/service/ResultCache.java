@@ -0,0 +1,383 @@
+package com.nassiesse.ocr.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nassiesse.ocr.CacheProperties;
+import com.nassiesse.ocr.ClassifierProperties;
+import com.nassiesse.ocr.PreprocessProperties;
+import com.nassiesse.ocr.TesseractProperties;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content addressed cache of extracted text with a size bounded in-memory LRU tier in front of an
+ * on-disk tier that survives restarts.
+ * <p>
+ * Documents are keyed by a SHA-256 of the PDF bytes, single OCRed pages by a hash of the page content,
+ * both combined with the {@link TesseractProperties}, {@link PreprocessProperties} and
+ * {@link ClassifierProperties} that change the output and with the OCR settings a request overrides. S3 objects additionally map
+ * bucket, key and ETag to the content hash, so an unchanged object doesn't have to be downloaded.
+ */
+@Component
+public class ResultCache {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+    private static final TypeReference<List<String>> PAGES = new TypeReference<>() {};
+
+    private final CacheProperties properties;
+    private final String fingerprint;
+    private final Path directory;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // guarded by this
+    private final Map<String, Object> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    public ResultCache(CacheProperties properties, TesseractProperties tesseractProperties,
+                       PreprocessProperties preprocessProperties, ClassifierProperties classifierProperties) {
+        this.properties = properties;
+        this.fingerprint = tesseractProperties.getLanguage() + '|' + tesseractProperties.getDpi() + '|'
+                + tesseractProperties.getDataPath() + '|' + tesseractProperties.getPageSegMode() + '|'
+                + tesseractProperties.getEngineMode() + '|' + preprocessProperties.fingerprint() + '|'
+                + classifierProperties.fingerprint();
+        this.directory = properties.isEnabled() && properties.getDirectory() != null && !properties.getDirectory().isBlank()
+                ? Path.of(properties.getDirectory()) : null;
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                diskBytes.set(files.filter(Files::isRegularFile).mapToLong(ResultCache::size).sum());
+            } catch (NoSuchFileException e) {
+                // created on first write
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to scan cache directory " + directory, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public boolean isPagesEnabled() {
+        return properties.isEnabled() && properties.isPagesEnabled();
+    }
+
+    public long getDiskBytes() {
+        return diskBytes.get();
+    }
+
+    /**
+     * Cache key of a whole document with the given content hash.
+     */
+    public String documentKey(String contentHash) {
+        return documentKey(contentHash, "");
+    }
+
+    /**
+     * Cache key of a whole document with the given content hash, extracted with OCR settings that differ
+     * from the configured ones as described by {@code variant}; empty if they don't.
+     */
+    public String documentKey(String contentHash, String variant) {
+        return sha256Hex("doc|" + contentHash + '|' + fingerprint + variant(variant));
+    }
+
+    /**
+     * Cache key of a single page with the given content hash.
+     */
+    public String pageKey(String pageHash) {
+        return pageKey(pageHash, "");
+    }
+
+    /**
+     * Cache key of a single page with the given content hash, see {@link #documentKey(String, String)}.
+     */
+    public String pageKey(String pageHash, String variant) {
+        return sha256Hex("page|" + pageHash + '|' + fingerprint + variant(variant));
+    }
+
+    private static String variant(String variant) {
+        // keys of the configured settings stay as they were
+        return variant.isEmpty() ? "" : "|" + variant;
+    }
+
+    public Optional<List<String>> getDocument(String key) {
+        return get("d", key, PAGES);
+    }
+
+    public void putDocument(String key, List<String> pages) {
+        put("d", key, List.copyOf(pages));
+    }
+
+    public Optional<String> getPage(String key) {
+        return get("p", key, new TypeReference<String>() {});
+    }
+
+    public void putPage(String key, String text) {
+        put("p", key, text);
+    }
+
+    /**
+     * Content hash of an S3 object as of the given ETag, if it was extracted before.
+     */
+    public Optional<String> getS3ContentHash(String bucket, String objectKey, String eTag) {
+        return get("s", s3Key(bucket, objectKey), new TypeReference<S3Entry>() {})
+                .filter(entry -> entry.eTag().equals(eTag))
+                .map(S3Entry::contentHash);
+    }
+
+    public void putS3ContentHash(String bucket, String objectKey, String eTag, String contentHash) {
+        put("s", s3Key(bucket, objectKey), new S3Entry(eTag, contentHash));
+    }
+
+    private static String s3Key(String bucket, String objectKey) {
+        return sha256Hex("s3|" + bucket + '|' + objectKey);
+    }
+
+    private <T> Optional<T> get(String kind, String key, TypeReference<T> type) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        final String memoryKey = kind + ':' + key;
+        synchronized (this) {
+            @SuppressWarnings("unchecked") final T value = (T) memory.get(memoryKey);
+            if (value != null) {
+                return Optional.of(value);
+            }
+        }
+        if (directory == null) {
+            return Optional.empty();
+        }
+        final Path file = path(kind, key);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            final T value = mapper.readValue(in, type);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            remember(memoryKey, value);
+            return Optional.of(value);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Dropping unreadable cache entry " + file, e);
+            delete(file);
+            return Optional.empty();
+        }
+    }
+
+    private void put(String kind, String key, Object value) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        remember(kind + ':' + key, value);
+        if (directory == null) {
+            return;
+        }
+        final Path file = path(kind, key);
+        try {
+            Files.createDirectories(file.getParent());
+            final Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            try {
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                    mapper.writeValue(out, value);
+                }
+                final long previous = Files.exists(file) ? size(file) : 0;
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (diskBytes.addAndGet(size(file) - previous) > properties.getDiskMaxBytes()) {
+                    prune();
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write cache entry " + file, e);
+        }
+    }
+
+    private synchronized void remember(String memoryKey, Object value) {
+        final Object previous = memory.put(memoryKey, value);
+        if (previous != null) {
+            memoryBytes -= weight(memoryKey, previous);
+        }
+        memoryBytes += weight(memoryKey, value);
+        final Iterator<Map.Entry<String, Object>> it = memory.entrySet().iterator();
+        while (memoryBytes > properties.getMemoryMaxBytes() && it.hasNext()) {
+            final Map.Entry<String, Object> eldest = it.next();
+            memoryBytes -= weight(eldest.getKey(), eldest.getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the disk tier is back to 90% of its limit.
+     */
+    private synchronized void prune() {
+        final long target = properties.getDiskMaxBytes() / 10 * 9;
+        if (diskBytes.get() <= target) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            final Iterator<Path> oldest = files.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparing(ResultCache::lastModified))
+                    .iterator();
+            while (diskBytes.get() > target && oldest.hasNext()) {
+                final Path file = oldest.next();
+                diskBytes.addAndGet(-size(file));
+                delete(file);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.log(Level.WARNING, "Failed to prune cache directory " + directory, e);
+        }
+    }
+
+    private Path path(String kind, String key) {
+        return directory.resolve(kind).resolve(key.substring(0, 2)).resolve(key + ".json.gz");
+    }
+
+    private static long weight(String memoryKey, Object value) {
+        long chars = memoryKey.length();
+        if (value instanceof String text) {
+            chars += text.length();
+        } else if (value instanceof List<?> pages) {
+            chars += pages.stream().mapToLong(page -> ((String) page).length() + 8).sum();
+        } else if (value instanceof S3Entry entry) {
+            chars += entry.eTag().length() + entry.contentHash().length();
+        }
+        return 2 * chars + 64;
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete cache entry " + file, e);
+        }
+    }
+
+    /**
+     * SHA-256 of the file content, hex encoded.
+     */
+    public static String contentHash(File file) throws IOException {
+        final MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hash of everything that affects how a page renders: its content streams, its resources (images,
+     * fonts, forms) and its boxes and rotation. Pages shared between documents hash the same.
+     */
+    public static String pageHash(PDPage page) throws IOException {
+        final MessageDigest digest = sha256();
+        final Map<COSBase, Integer> visited = new IdentityHashMap<>();
+        final COSDictionary dictionary = page.getCOSObject();
+        for (COSName name : List.of(COSName.CONTENTS, COSName.RESOURCES)) {
+            digest.update(name.getName().getBytes(StandardCharsets.UTF_8));
+            digestCOS(dictionary.getDictionaryObject(name), digest, visited);
+        }
+        digest.update((page.getMediaBox() + "|" + page.getCropBox() + "|" + page.getRotation())
+                .getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void digestCOS(COSBase base, MessageDigest digest, Map<COSBase, Integer> visited) throws IOException {
+        final COSBase value = base instanceof COSObject object ? object.getObject() : base;
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        if (value instanceof COSDictionary || value instanceof COSArray) {
+            final Integer seen = visited.putIfAbsent(value, visited.size());
+            if (seen != null) {
+                digest.update(("#" + seen).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        if (value instanceof COSDictionary dictionary) {
+            digest.update((byte) '<');
+            for (COSName key : dictionary.keySet().stream().sorted().toList()) {
+                if (COSName.PARENT.equals(key)) {
+                    continue;
+                }
+                digest.update(key.getName().getBytes(StandardCharsets.UTF_8));
+                digestCOS(dictionary.getItem(key), digest, visited);
+            }
+            digest.update((byte) '>');
+            if (value instanceof COSStream stream) {
+                try (InputStream in = new DigestInputStream(stream.createRawInputStream(), digest)) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+        } else if (value instanceof COSArray array) {
+            digest.update((byte) '[');
+            for (COSBase item : array) {
+                digestCOS(item, digest, visited);
+            }
+            digest.update((byte) ']');
+        } else {
+            digest.update(value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static String sha256Hex(String value) {
+        return HexFormat.of().formatHex(sha256().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    record S3Entry(String eTag, String contentHash) {}
+}
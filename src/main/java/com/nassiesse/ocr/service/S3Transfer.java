@@ -0,0 +1,184 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.S3Properties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.FileTransformerConfiguration;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3BaseClientBuilder;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * The S3 clients of the service, configured from {@link S3Properties}.
+ * <p>
+ * Small objects are read through the synchronous {@link #client()}. Large ones are downloaded by
+ * {@link #download(String, String, HeadObjectResponse, Path)} on the non-blocking client, in ranged GETs
+ * of {@link S3Properties#getPartSizeBytes()} written straight to their position in the target file, so a
+ * big PDF arrives over several connections without holding a thread per connection.
+ * <p>
+ * The clients are built on first use, so starting a replica that hasn't touched S3 yet doesn't pay for
+ * their HTTP stacks and credential lookups.
+ */
+@Component
+public class S3Transfer implements DisposableBean {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+
+    private final S3Properties properties;
+    // built on first use, guarded by this
+    private volatile S3Client client;
+    private volatile S3AsyncClient asyncClient;
+
+    public S3Transfer(S3Properties properties) {
+        this.properties = properties;
+    }
+
+    private <B extends S3BaseClientBuilder<B, ?>> B configure(B builder) {
+        if (!properties.getEndpoint().isEmpty()) {
+            builder.endpointOverride(URI.create(properties.getEndpoint()));
+        }
+        if (!properties.getRegion().isEmpty()) {
+            builder.region(Region.of(properties.getRegion()));
+        }
+        return builder.forcePathStyle(properties.isPathStyleAccess());
+    }
+
+    public S3Client client() {
+        S3Client result = client;
+        if (result == null) {
+            synchronized (this) {
+                if (client == null) {
+                    client = configure(S3Client.builder()
+                            .httpClientBuilder(ApacheHttpClient.builder().maxConnections(properties.getMaxConnections())))
+                            .build();
+                }
+                result = client;
+            }
+        }
+        return result;
+    }
+
+    private S3AsyncClient asyncClient() {
+        S3AsyncClient result = asyncClient;
+        if (result == null) {
+            synchronized (this) {
+                if (asyncClient == null) {
+                    asyncClient = configure(S3AsyncClient.builder()
+                            .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(properties.getMaxConnections())))
+                            .build();
+                }
+                result = asyncClient;
+            }
+        }
+        return result;
+    }
+
+    public HeadObjectResponse head(String bucketName, String key) {
+        return client().headObject(HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+    }
+
+    /**
+     * Download the object described by {@code head} to {@code target}, fetching up to
+     * {@link S3Properties#getPartsInFlight()} ranges at once. Every range is requested for the ETag of
+     * {@code head}, so an object replaced during the download fails instead of mixing versions.
+     *
+     * @return the number of bytes downloaded
+     */
+    public long download(String bucketName, String key, HeadObjectResponse head, Path target) throws IOException {
+        final long size = head.contentLength();
+        final int parts = (int) Math.max(1, (size + properties.getPartSizeBytes() - 1) / properties.getPartSizeBytes());
+        // the ranges are written at their offsets, in whatever order they arrive
+        try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+            file.setLength(size);
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (int i = 0; i < Math.min(parts, properties.getPartsInFlight()); i++) {
+            lanes.add(lane(bucketName, key, head, target, parts, next));
+        }
+        try {
+            CompletableFuture.allOf(lanes.toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            next.set(parts);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download of " + key + " interrupted");
+        } catch (ExecutionException e) {
+            next.set(parts);
+            final Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Download of " + key + " failed", cause);
+        }
+        LOGGER.info("Downloaded " + size + " byte(s) of S3 object " + key + " in " + parts + " part(s)");
+        return size;
+    }
+
+    /**
+     * Fetch the next part not yet taken by another lane, then the one after that, until all are done.
+     */
+    private CompletableFuture<Void> lane(String bucketName, String key, HeadObjectResponse head, Path target,
+                                         int parts, AtomicInteger next) {
+        final int part = next.getAndIncrement();
+        if (part >= parts) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final long first = part * properties.getPartSizeBytes();
+        final long last = Math.min(head.contentLength(), first + properties.getPartSizeBytes()) - 1;
+        final GetObjectRequest.Builder request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .ifMatch(head.eTag());
+        if (parts > 1) {
+            request.range("bytes=" + first + "-" + last);
+        }
+        return asyncClient().getObject(request.build(), AsyncResponseTransformer.toFile(target, FileTransformerConfiguration.builder()
+                        .fileWriteOption(FileTransformerConfiguration.FileWriteOption.WRITE_TO_POSITION)
+                        .position(first)
+                        .failureBehavior(FileTransformerConfiguration.FailureBehavior.LEAVE)
+                        .build()))
+                .thenCompose(response -> {
+                    if (response.contentLength() != last - first + 1) {
+                        throw new UncheckedIOException(new IOException("Expected " + (last - first + 1) + " byte(s) of S3 object "
+                                + key + " at " + first + ", got " + response.contentLength()));
+                    }
+                    return lane(bucketName, key, head, target, parts, next);
+                });
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (client != null) {
+            client.close();
+        }
+        if (asyncClient != null) {
+            asyncClient.close();
+        }
+    }
+}
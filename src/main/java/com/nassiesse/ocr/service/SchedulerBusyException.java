@@ -0,0 +1,10 @@
+package com.nassiesse.ocr.service;
+
+/**
+ * Thrown when a request can't be admitted because the OCR scheduler is at its in-flight page limit.
+ */
+public class SchedulerBusyException extends RuntimeException {
+    public SchedulerBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,329 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.TesseractProperties;
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of warmed-up Tesseract engines.
+ * <p>
+ * At most {@link TesseractProperties#getWorkerPoolSize()} engines are alive at any time, across all
+ * {@link EngineKey}s. Callers check an engine out with {@link #acquire(EngineKey)} and give it back by
+ * closing the returned {@link Lease}. Engines are retired instead of returned once they have processed
+ * {@link TesseractProperties#getEngineMaxPages()} pages or when the lease was marked as failed.
+ * <p>
+ * Each language needs its own engines, which hold their traineddata in native memory. Idle engines are
+ * kept for at most {@link TesseractProperties#getMaxIdleModels()} keys; the engines of the least recently
+ * used key go first, both beyond that and when a new key needs room at capacity. The page segmentation
+ * mode is not part of the key, it is set on the checked out engine without loading anything.
+ */
+@Component
+public class TesseractPool implements DisposableBean {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+
+    private final int size;
+    private final int maxPages;
+    private final int maxIdleModels;
+    private final Function<EngineKey, PooledTesseract> factory;
+    private final Semaphore permits;
+    // idle engines and the live count are guarded by this; in access order, least recently used key first
+    private final Map<EngineKey, Deque<PooledTesseract>> idle = new LinkedHashMap<>(16, 0.75f, true);
+    private int live;
+
+    @Autowired
+    public TesseractPool(TesseractProperties properties) {
+        this(properties.getWorkerPoolSize(), properties.getEngineMaxPages(), properties.getMaxIdleModels(),
+                key -> key.configure(new PooledTesseract()));
+    }
+
+    TesseractPool(int size, int maxPages, int maxIdleModels, Function<EngineKey, PooledTesseract> factory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.size = size;
+        this.maxPages = maxPages;
+        this.maxIdleModels = Math.max(1, maxIdleModels);
+        this.factory = factory;
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Check out an engine for the given settings, blocking while all engines are in use.
+     */
+    public Lease acquire(EngineKey key) throws InterruptedException {
+        return acquire(key, -1);
+    }
+
+    /**
+     * Check out an engine for the given settings that segments pages with {@code pageSegMode}, or with the
+     * engine's default if it's negative.
+     */
+    public Lease acquire(EngineKey key, int pageSegMode) throws InterruptedException {
+        permits.acquire();
+        try {
+            final PooledTesseract engine = checkout(key);
+            try {
+                engine.setPageSegMode(pageSegMode);
+            } catch (RuntimeException | Error e) {
+                checkin(key, engine);
+                throw e;
+            }
+            return new Lease(key, engine);
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Initialise up to {@code count} idle engines for {@code key} so the first pages don't pay for
+     * loading the traineddata. The engines load side by side, reading the model is mostly I/O and parsing.
+     */
+    public void warmUp(EngineKey key, int count) throws InterruptedException {
+        final int engines = Math.min(count, size);
+        permits.acquire(engines);
+        final List<PooledTesseract> warmed = new ArrayList<>();
+        try {
+            for (int i = 0; i < engines; i++) {
+                warmed.add(checkout(key));
+            }
+            final List<Future<?>> loads = new ArrayList<>();
+            try (ExecutorService loader = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (PooledTesseract engine : warmed) {
+                    loads.add(loader.submit(() -> {
+                        try {
+                            engine.init();
+                        } catch (RuntimeException | LinkageError e) {
+                            engine.markFailed();
+                            throw e;
+                        }
+                    }));
+                }
+            }
+            for (Future<?> load : loads) {
+                try {
+                    load.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException runtime) {
+                        throw runtime;
+                    }
+                    throw (Error) e.getCause();
+                }
+            }
+        } finally {
+            warmed.forEach(engine -> checkin(key, engine));
+            permits.release(engines);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public synchronized int getLive() {
+        return live;
+    }
+
+    public synchronized int getIdle() {
+        return idle.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    /**
+     * The keys that have idle engines, least recently used first.
+     */
+    synchronized List<EngineKey> getIdleKeys() {
+        return List.copyOf(idle.keySet());
+    }
+
+    private PooledTesseract checkout(EngineKey key) {
+        final PooledTesseract retired;
+        synchronized (this) {
+            final Deque<PooledTesseract> engines = idle.get(key);
+            while (engines != null && !engines.isEmpty()) {
+                final PooledTesseract engine = engines.pollFirst();
+                if (isHealthy(engine)) {
+                    return engine;
+                }
+                live--;
+                close(engine);
+            }
+            // holding a permit means fewer than size engines are checked out, so if we're at capacity
+            // there is an idle engine for some other key that can make room
+            retired = live >= size ? evictIdle() : null;
+            live++;
+        }
+        if (retired != null) {
+            close(retired);
+        }
+        try {
+            return factory.apply(key);
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                live--;
+            }
+            throw e;
+        }
+    }
+
+    private void checkin(EngineKey key, PooledTesseract engine) {
+        final List<PooledTesseract> retired = new ArrayList<>();
+        synchronized (this) {
+            if (isHealthy(engine)) {
+                idle.computeIfAbsent(key, k -> new ArrayDeque<>()).addFirst(engine);
+                // the key just used is the most recent one, so this never drops the engine just returned
+                final Iterator<Map.Entry<EngineKey, Deque<PooledTesseract>>> it = idle.entrySet().iterator();
+                while (idle.size() > maxIdleModels) {
+                    final Map.Entry<EngineKey, Deque<PooledTesseract>> eldest = it.next();
+                    LOGGER.info("Releasing " + eldest.getValue().size() + " idle engine(s) for " + eldest.getKey().language());
+                    retired.addAll(eldest.getValue());
+                    live -= eldest.getValue().size();
+                    it.remove();
+                }
+            } else {
+                live--;
+                retired.add(engine);
+            }
+        }
+        retired.forEach(TesseractPool::close);
+    }
+
+    private PooledTesseract evictIdle() {
+        final Iterator<Deque<PooledTesseract>> it = idle.values().iterator();
+        while (it.hasNext()) {
+            final Deque<PooledTesseract> engines = it.next();
+            final PooledTesseract engine = engines.pollLast();
+            if (engines.isEmpty()) {
+                it.remove();
+            }
+            if (engine != null) {
+                live--;
+                return engine;
+            }
+        }
+        return null;
+    }
+
+    private boolean isHealthy(PooledTesseract engine) {
+        return !engine.isFailed() && (maxPages <= 0 || engine.getPages() < maxPages);
+    }
+
+    private static void close(PooledTesseract engine) {
+        try {
+            engine.close();
+        } catch (RuntimeException | LinkageError e) {
+            LOGGER.log(Level.WARNING, "Failed to release Tesseract engine", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            for (Deque<PooledTesseract> engines : idle.values()) {
+                live -= engines.size();
+                engines.forEach(TesseractPool::close);
+            }
+            idle.clear();
+        }
+    }
+
+    /**
+     * Engine settings that require a separately initialised engine.
+     */
+    public record EngineKey(String dataPath, String language, int engineMode) {
+        public static EngineKey of(TesseractProperties properties) {
+            return of(properties, properties.getLanguage(), properties.getEngineMode());
+        }
+
+        public static EngineKey of(TesseractProperties properties, String language, int engineMode) {
+            return new EngineKey(properties.getDataPath(), language, engineMode);
+        }
+
+        <T extends ITesseract> T configure(T tesseract) {
+            tesseract.setDatapath(dataPath);
+            tesseract.setLanguage(language);
+            tesseract.setOcrEngineMode(engineMode);
+            return tesseract;
+        }
+    }
+
+    /**
+     * A checked out engine; closing the lease returns it to the pool.
+     */
+    public final class Lease implements AutoCloseable {
+        private final EngineKey key;
+        private final PooledTesseract engine;
+        private boolean closed;
+
+        private Lease(EngineKey key, PooledTesseract engine) {
+            this.key = key;
+            this.engine = engine;
+        }
+
+        public ITesseract engine() {
+            return engine;
+        }
+
+        /**
+         * OCR {@code image}, whose resolution is {@code dpi}, giving up once {@code deadline} expires.
+         */
+        String text(BufferedImage image, int dpi, PageDeadline deadline) throws TesseractException {
+            engine.setDeadline(deadline);
+            try {
+                return engine.text(image, dpi);
+            } finally {
+                engine.setDeadline(PageDeadline.NONE);
+            }
+        }
+
+        /**
+         * OCR {@code image}, whose resolution is {@code dpi}, and add its line and word boxes, in pixels of
+         * the image, to {@code lines}, giving up once {@code deadline} expires.
+         */
+        String recognize(BufferedImage image, int dpi, List<Layout.Line> lines, PageDeadline deadline) throws TesseractException {
+            engine.setDeadline(deadline);
+            try {
+                return engine.recognize(image, dpi, lines);
+            } finally {
+                engine.setDeadline(PageDeadline.NONE);
+            }
+        }
+
+        /**
+         * Retire the engine on close, e.g. after a native error left it in an unknown state.
+         */
+        public void failed() {
+            engine.markFailed();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            engine.pageDone();
+            checkin(key, engine);
+            permits.release();
+        }
+    }
+}
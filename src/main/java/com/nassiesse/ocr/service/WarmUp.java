@@ -0,0 +1,131 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.StartupProperties;
+import com.nassiesse.ocr.TesseractProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Warms the service up once the application has started: initialises Tesseract engines for the
+ * {@link StartupProperties#getLanguages() languages} it expects, all of them side by side, and extracts
+ * the bundled test document.
+ * <p>
+ * With {@link StartupProperties#isBackground()} the context finishes starting right away and this runs on
+ * its own thread, while the {@code warmUp} health indicator, part of the readiness group, reports the
+ * service out of service; a load balancer only sends traffic once it's warm. The time from JVM start
+ * until then is the {@code ocr.ready.time} gauge. Failures are logged and don't keep the service from
+ * getting ready, pages just pay for the initialisation themselves.
+ */
+@Component
+public class WarmUp implements HealthIndicator {
+    private final static Logger LOGGER = Logger.getLogger("SimpleOCRController");
+
+    private final StartupProperties properties;
+    private final TesseractProperties tesseractProperties;
+    private final TesseractPool pool;
+    private final OCRService service;
+    private final List<String> failures = new ArrayList<>();
+    private volatile long readyMillis = -1;
+
+    public WarmUp(StartupProperties properties, TesseractProperties tesseractProperties, TesseractPool pool,
+                  OCRService service, MeterRegistry registry) {
+        this.properties = properties;
+        this.tesseractProperties = tesseractProperties;
+        this.pool = pool;
+        this.service = service;
+        TimeGauge.builder("ocr.ready.time", this, TimeUnit.MILLISECONDS,
+                        warmUp -> warmUp.readyMillis < 0 ? Double.NaN : warmUp.readyMillis)
+                .description("Time from JVM start until the service was warmed up and ready for traffic")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        if (properties.isBackground()) {
+            Thread.ofPlatform().name("warm-up").daemon().start(this::run);
+        } else {
+            run();
+        }
+    }
+
+    void run() {
+        final long start = System.nanoTime();
+        final List<String> languages = properties.getLanguages().isEmpty()
+                ? List.of(tesseractProperties.getLanguage()) : properties.getLanguages();
+        final List<String> tasks = new ArrayList<>();
+        final List<Future<?>> done = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // with an external Tesseract no engine in this JVM ever OCRs a page
+            for (String language : tesseractProperties.isExternal() ? List.<String>of() : languages) {
+                final TesseractPool.EngineKey key = TesseractPool.EngineKey.of(tesseractProperties, language,
+                        tesseractProperties.getEngineMode());
+                tasks.add("engines " + language);
+                done.add(executor.submit(() -> {
+                    pool.warmUp(key, properties.getEngines());
+                    return null;
+                }));
+            }
+            if (properties.isDocument()) {
+                tasks.add("document");
+                done.add(executor.submit(() -> {
+                    service.warmUpDocument();
+                    return null;
+                }));
+            }
+        }
+        final List<String> failed = new ArrayList<>();
+        for (int i = 0; i < done.size(); i++) {
+            try {
+                done.get(i).get();
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.SEVERE, "Warm-up of " + tasks.get(i) + " failed", e.getCause());
+                failed.add(tasks.get(i));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        synchronized (failures) {
+            failures.addAll(failed);
+        }
+        readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        LOGGER.info("Ready " + readyMillis + "ms after JVM start, warm-up took "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    /**
+     * Milliseconds from JVM start until warm-up finished, or -1 while it's running.
+     */
+    public long getReadyMillis() {
+        return readyMillis;
+    }
+
+    @Override
+    public Health health() {
+        if (readyMillis < 0) {
+            return Health.outOfService().build();
+        }
+        synchronized (failures) {
+            return Health.up()
+                    .withDetail("readyMillis", readyMillis)
+                    .withDetail("failed", List.copyOf(failures))
+                    .build();
+        }
+    }
+}
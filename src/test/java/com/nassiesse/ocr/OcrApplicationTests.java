@@ -1,11 +1,26 @@
 package com.nassiesse.ocr;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
 
 @SpringBootTest
 class OcrApplicationTests {
 
+	// the on-disk cache and job store of this context, so results don't carry over between runs or test classes
+	@TempDir
+	static Path directory;
+
+	@DynamicPropertySource
+	static void directories(DynamicPropertyRegistry registry) {
+		registry.add("cache.directory", () -> directory.resolve("cache").toString());
+		registry.add("jobs.directory", () -> directory.resolve("jobs").toString());
+	}
+
 	@Test
 	void contextLoads() {
 	}
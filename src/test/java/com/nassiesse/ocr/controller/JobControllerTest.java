@@ -0,0 +1,73 @@
+package com.nassiesse.ocr.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class JobControllerTest {
+
+    // the on-disk cache and job store of this context, so results don't carry over between runs or test classes
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("cache.directory", () -> directory.resolve("cache").toString());
+        registry.add("jobs.directory", () -> directory.resolve("jobs").toString());
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void processesUploadedJob() throws Exception {
+        var file = new MockMultipartFile("file", "test.pdf", "application/pdf", getClass().getResourceAsStream("/test.pdf"));
+        var submitted = mapper.readTree(mvc.perform(multipart("/api/pdf/jobs").file(file))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString());
+        var id = submitted.get("id").asText();
+
+        JsonNode job = submitted;
+        for (int i = 0; i < 300 && !job.get("status").asText().equals("DONE"); i++) {
+            assertThat(job.get("status").asText()).isNotEqualTo("FAILED");
+            Thread.sleep(100);
+            job = mapper.readTree(mvc.perform(get("/api/pdf/jobs/" + id))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+        }
+        assertThat(job.get("status").asText()).isEqualTo("DONE");
+        assertThat(job.get("pagesDone").asInt()).isEqualTo(1);
+
+        var result = mapper.readTree(mvc.perform(get("/api/pdf/jobs/" + id + "/result"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        assertThat(result.get("fileName").asText()).isEqualTo("test.pdf");
+        assertThat(result.get("pageCount").asInt()).isEqualTo(1);
+        assertThat(result.get("text").asText()).isNotBlank();
+    }
+
+    @Test
+    public void unknownJob() throws Exception {
+        mvc.perform(get("/api/pdf/jobs/missing")).andExpect(status().isNotFound());
+        mvc.perform(get("/api/pdf/jobs/missing/result")).andExpect(status().isNotFound());
+    }
+}
@@ -1,20 +1,53 @@
 package com.nassiesse.ocr.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nassiesse.ocr.service.Layout;
+import com.nassiesse.ocr.service.OCRService;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMockMvc
 class OCRControllerTest {
 
+    // the on-disk cache and job store of this context, so results don't carry over between runs or test classes
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("cache.directory", () -> directory.resolve("cache").toString());
+        registry.add("jobs.directory", () -> directory.resolve("jobs").toString());
+    }
+
     @Autowired
     OCRController controller;
 
+    @Autowired
+    MockMvc mvc;
+
     @Test
     public void context() {
         assertThat(controller).isNotNull();
@@ -26,4 +59,98 @@ class OCRControllerTest {
         var text = new ObjectMapper().writeValueAsString(res);
         assertThat(text).isEqualTo("{\"text\":\"test\",\"fileName\":\"filename\",\"pageCount\":1}");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void layoutJson() throws IOException {
+        var page = new OCRService.PageText(0, "Hello world", List.of(new Layout.Line(72, 90, 120, 14, 91,
+                List.of(new Layout.Word("Hello", 72, 90, 50, 14, 95), new Layout.Word("world", 130, 90, 62, 14, 87)))));
+        var text = new ObjectMapper().writeValueAsString(page);
+        assertThat(text).isEqualTo("{\"index\":0,\"text\":\"Hello world\",\"lines\":[{\"x\":72,\"y\":90,\"width\":120,"
+                + "\"height\":14,\"confidence\":91,\"words\":[[\"Hello\",72,90,50,14,95],[\"world\",130,90,62,14,87]]}]}");
+        assertThat(new ObjectMapper().writeValueAsString(new OCRService.PageText(0, "Hello")))
+                .isEqualTo("{\"index\":0,\"text\":\"Hello\"}");
+    }
+
+    @Test
+    public void failedPagesJson() throws IOException {
+        var page = new OCRService.PageText(2, "", null, OCRService.PageStatus.TIMED_OUT, "Page timed out after 120s");
+        assertThat(new ObjectMapper().writeValueAsString(page))
+                .isEqualTo("{\"index\":2,\"text\":\"\",\"status\":\"timed_out\",\"error\":\"Page timed out after 120s\"}");
+        var res = new OCRController.Result("text", "filename", 3, false, List.of(page));
+        assertThat(new ObjectMapper().writeValueAsString(res)).isEqualTo("{\"text\":\"text\",\"fileName\":\"filename\","
+                + "\"pageCount\":3,\"failedPages\":[{\"index\":2,\"text\":\"\",\"status\":\"timed_out\","
+                + "\"error\":\"Page timed out after 120s\"}]}");
+    }
+
+    @Test
+    public void streamsLayoutOnRequest() throws Exception {
+        var file = new MockMultipartFile("file", "test.pdf", "application/pdf", getClass().getResourceAsStream("/test.pdf"));
+        var started = mvc.perform(multipart("/api/pdf/extractText").file(file).param("layout", "true").accept(OCRController.NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        var lines = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertThat(lines.length).isEqualTo(2);
+        assertThat(lines[0]).startsWith("{\"index\":0,\"text\":").contains("\"lines\":[");
+    }
+
+    @Test
+    public void rejectsUnknownOcrSettings() throws Exception {
+        var file = new MockMultipartFile("file", "test.pdf", "application/pdf", getClass().getResourceAsStream("/test.pdf"));
+        mvc.perform(multipart("/api/pdf/extractText").file(file).param("language", "../eng"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(multipart("/api/pdf/extractText").file(file).param("language", "qqq"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(multipart("/api/pdf/extractText").file(file).param("psm", "14").accept(OCRController.NDJSON))
+                .andExpect(status().isBadRequest());
+        mvc.perform(multipart("/api/pdf/extractText").file(file).param("layout", "true"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void marksTruncatedResults() throws Exception {
+        // a document no earlier run can have cached, cached text is served whatever the time budget
+        var file = new MockMultipartFile("file", "budget.pdf", "application/pdf", uniquePdf());
+        var text = mvc.perform(multipart("/api/pdf/extractText").file(file).param("timeBudget", "PT0.000000001S"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(text).isEqualTo("{\"text\":\"\",\"fileName\":\"budget.pdf\",\"pageCount\":1,\"truncated\":true}");
+        text = mvc.perform(multipart("/api/pdf/extractText").file(file).param("pages", "1-").param("timeBudget", "PT10S"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(text).startsWith("{\"text\":\"Budget run").doesNotContain("truncated");
+        mvc.perform(multipart("/api/pdf/extractText").file(file).param("pages", "0-2"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static byte[] uniquePdf() throws IOException {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            final PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(72, 720);
+                content.showText("Budget run " + System.nanoTime());
+                content.endText();
+            }
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void streamsPagesAsNdjson() throws Exception {
+        var file = new MockMultipartFile("file", "test.pdf", "application/pdf", getClass().getResourceAsStream("/test.pdf"));
+        var started = mvc.perform(multipart("/api/pdf/extractText").file(file).accept(OCRController.NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        var lines = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertThat(lines.length).isEqualTo(2);
+        assertThat(lines[0]).startsWith("{\"index\":0,\"text\":");
+        assertThat(lines[1]).isEqualTo("{\"fileName\":\"test.pdf\",\"pageCount\":1}");
+    }
+}
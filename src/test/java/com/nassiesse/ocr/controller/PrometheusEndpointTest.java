@@ -0,0 +1,81 @@
+package com.nassiesse.ocr.controller;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+// tests disable metrics exporters unless asked for them
+@AutoConfigureObservability
+class PrometheusEndpointTest {
+
+    // the on-disk cache and job store of this context, so results don't carry over between runs or test classes
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("cache.directory", () -> directory.resolve("cache").toString());
+        registry.add("jobs.directory", () -> directory.resolve("jobs").toString());
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    public void publishesStageMetrics() throws Exception {
+        var file = new MockMultipartFile("file", "metrics.pdf", "application/pdf", uniquePdf());
+        mvc.perform(multipart("/api/pdf/extractText").file(file)).andExpect(status().isOk());
+
+        var text = mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(text).contains("# TYPE ocr_page_seconds histogram");
+        assertThat(text).contains("ocr_page_seconds_count{cached=\"false\",error=\"none\",strategy=\"text\"}");
+        assertThat(text).contains("ocr_stage_seconds_count{error=\"none\",stage=\"classify\"}");
+        assertThat(text).contains("ocr_extraction_seconds_bucket{error=\"none\",source=\"upload\",le=\"+Inf\"}");
+        assertThat(text).contains("ocr_document_size_bytes_count{source=\"upload\"}");
+        assertThat(text).contains("ocr_scheduler_inflight ");
+        assertThat(text).contains("ocr_temp_disk_bytes ");
+    }
+
+    /**
+     * A document no earlier run can have cached.
+     */
+    private static byte[] uniquePdf() throws IOException {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            final PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(72, 720);
+                content.showText("Metrics run " + System.nanoTime());
+                content.endText();
+            }
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+}
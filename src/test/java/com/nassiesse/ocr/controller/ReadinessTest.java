@@ -0,0 +1,56 @@
+package com.nassiesse.ocr.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+// tests disable metrics exporters unless asked for them
+@AutoConfigureObservability
+class ReadinessTest {
+
+    // the on-disk cache and job store of this context, so results don't carry over between runs or test classes
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("cache.directory", () -> directory.resolve("cache").toString());
+        registry.add("jobs.directory", () -> directory.resolve("jobs").toString());
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    public void readyOnceWarmedUp() throws Exception {
+        int status = 0;
+        for (int i = 0; i < 600 && status != 200; i++) {
+            status = mvc.perform(get("/actuator/health/readiness")).andReturn().getResponse().getStatus();
+            if (status != 200) {
+                assertThat(status).isEqualTo(503);
+                Thread.sleep(100);
+            }
+        }
+        assertThat(status).isEqualTo(200);
+        mvc.perform(get("/actuator/health/liveness")).andExpect(status().isOk());
+
+        var text = mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(text).containsPattern("(?m)^ocr_ready_time_seconds [0-9.E]+$");
+    }
+}
@@ -0,0 +1,121 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.BatchProperties;
+import com.nassiesse.ocr.SchedulerProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class BatchServiceTest {
+
+    // the on-disk cache and job store of this context, so results don't carry over between runs or test classes
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("cache.directory", () -> directory.resolve("cache").toString());
+        registry.add("jobs.directory", () -> directory.resolve("jobs").toString());
+    }
+
+    @Autowired
+    OCRService service;
+
+    @Autowired
+    SchedulerProperties schedulerProperties;
+
+    @Test
+    public void extractsAllKeysAndReportsFailures() throws Exception {
+        final Map<String, File> files = new HashMap<>();
+        try {
+            for (int i = 0; i < 6; i++) {
+                files.put("doc-" + i + ".pdf", pdf("Batch document number " + "abcdef".charAt(i), i + 1));
+            }
+            final BatchProperties properties = new BatchProperties();
+            properties.setDownloadConcurrency(2);
+            properties.setDocumentsInFlight(3);
+            final BatchService batch = new BatchService((bucket, key) -> {
+                final File file = files.get(key);
+                if (file == null) {
+                    throw new FileNotFoundException(key);
+                }
+                return service.openPDF(file);
+            }, (bucket, prefix, max) -> List.of(), properties, schedulerProperties);
+
+            final List<String> keys = new ArrayList<>(files.keySet());
+            keys.add("missing.pdf");
+            final List<BatchService.Outcome> outcomes = new ArrayList<>();
+            final int failed = batch.run("bucket", keys, outcomes::add);
+
+            assertThat(failed).isEqualTo(1);
+            assertThat(outcomes).extracting(BatchService.Outcome::key).containsExactlyInAnyOrderElementsOf(keys);
+            for (BatchService.Outcome outcome : outcomes) {
+                if (outcome.key().equals("missing.pdf")) {
+                    assertThat(outcome.error()).isEqualTo("missing.pdf");
+                } else {
+                    final int i = Integer.parseInt(outcome.key().replaceAll("\\D", ""));
+                    assertThat(outcome.data().pageCount()).isEqualTo(i + 1);
+                    assertThat(outcome.data().text()).contains("Batch document number " + "abcdef".charAt(i));
+                }
+            }
+        } finally {
+            files.values().forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void limitsKeys() throws IOException {
+        final BatchProperties properties = new BatchProperties();
+        properties.setMaxKeys(3);
+        final BatchService batch = new BatchService((bucket, key) -> {
+            throw new IOException("unused");
+        }, (bucket, prefix, max) -> IntStream.range(0, max).mapToObj(i -> prefix + i).toList(), properties, schedulerProperties);
+
+        assertThatThrownBy(() -> batch.keys("bucket", List.of("a", "b", "c", "d"), null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> batch.keys("bucket", null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(batch.keys("bucket", List.of("a"), "ignored")).isEqualTo(new BatchService.Keys(List.of("a"), false));
+        assertThat(batch.keys("bucket", null, "p/")).isEqualTo(new BatchService.Keys(List.of("p/0", "p/1", "p/2"), true));
+    }
+
+    private static File pdf(String text, int pages) throws IOException {
+        final File file = File.createTempFile("batch", ".pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < pages; i++) {
+                final PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 12);
+                    content.newLineAtOffset(72, 720);
+                    content.showText(text + ", page " + (i + 1));
+                    content.endText();
+                }
+            }
+            document.save(file);
+        }
+        return file;
+    }
+}
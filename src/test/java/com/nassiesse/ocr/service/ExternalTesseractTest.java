@@ -0,0 +1,89 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.TesseractProperties;
+import net.sourceforge.tess4j.TesseractException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExternalTesseractTest {
+    private static final String TSV = """
+            level\tpage_num\tblock_num\tpar_num\tline_num\tword_num\tleft\ttop\twidth\theight\tconf\ttext
+            1\t1\t0\t0\t0\t0\t0\t0\t1000\t800\t-1\t
+            2\t1\t1\t0\t0\t0\t10\t10\t400\t60\t-1\t
+            3\t1\t1\t1\t0\t0\t10\t10\t400\t60\t-1\t
+            4\t1\t1\t1\t1\t0\t10\t10\t300\t25\t-1\t
+            5\t1\t1\t1\t1\t1\t10\t10\t120\t25\t96.5\tHello
+            5\t1\t1\t1\t1\t2\t140\t10\t170\t25\t91\tworld
+            4\t1\t1\t1\t2\t0\t10\t40\t100\t25\t-1\t
+            5\t1\t1\t1\t2\t1\t10\t40\t100\t25\t88\tagain
+            2\t1\t2\t0\t0\t0\t10\t100\t400\t30\t-1\t
+            3\t1\t2\t1\t0\t0\t10\t100\t400\t30\t-1\t
+            4\t1\t2\t1\t1\t0\t10\t100\t80\t25\t-1\t
+            5\t1\t2\t1\t1\t1\t10\t100\t80\t25\t90\tBye
+            5\t1\t2\t1\t1\t2\t90\t100\t5\t25\t95\t\s
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void parsesTsv() {
+        final List<Layout.Line> lines = new ArrayList<>();
+        assertThat(ExternalTesseract.parseTsv(TSV, lines)).isEqualTo("Hello world\nagain\n\nBye\n");
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(0)).isEqualTo(new Layout.Line(10, 10, 300, 25, 94, List.of(
+                new Layout.Word("Hello", 10, 10, 120, 25, 97), new Layout.Word("world", 140, 10, 170, 25, 91))));
+        assertThat(lines.get(2).words()).extracting(Layout.Word::text).containsExactly("Bye");
+        assertThat(ExternalTesseract.parseTsv(TSV, null)).isEqualTo("Hello world\nagain\n\nBye\n");
+    }
+
+    @Test
+    public void runsCommand() throws Exception {
+        // stands in for tesseract: writes the TSV next to the output base it was given
+        final Path tsv = Files.writeString(directory.resolve("result.tsv"), TSV);
+        final ExternalTesseract tesseract = tesseract("cp " + tsv + " \"$2.tsv\"");
+        assertThat(tesseract.recognize(image(), 300, "eng", 6, 1, null, PageDeadline.NONE)).startsWith("Hello world\n");
+    }
+
+    @Test
+    public void reportsCrashes() throws IOException {
+        final ExternalTesseract tesseract = tesseract("echo 'Segmentation fault'; kill -SEGV $$");
+        assertThatThrownBy(() -> tesseract.recognize(image(), 300, "eng", -1, 1, null, PageDeadline.NONE))
+                .isInstanceOf(TesseractException.class)
+                .hasMessageContaining("exited with");
+    }
+
+    @Test
+    public void killsAtDeadline() throws IOException {
+        final ExternalTesseract tesseract = tesseract("exec sleep 30");
+        final long started = System.nanoTime();
+        assertThatThrownBy(() -> tesseract.recognize(image(), 300, "eng", -1, 1, null,
+                PageDeadline.after(Duration.ofMillis(300), () -> false)))
+                .isInstanceOf(InterruptedIOException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(10));
+    }
+
+    private ExternalTesseract tesseract(String script) throws IOException {
+        final Path command = Files.writeString(directory.resolve("tesseract"), "#!/bin/sh\n" + script + "\n");
+        command.toFile().setExecutable(true);
+        final TesseractProperties properties = new TesseractProperties();
+        properties.setCommand(command.toString());
+        return new ExternalTesseract(properties);
+    }
+
+    private static BufferedImage image() {
+        return new BufferedImage(20, 20, BufferedImage.TYPE_BYTE_GRAY);
+    }
+}
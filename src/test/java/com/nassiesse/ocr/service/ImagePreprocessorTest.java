@@ -0,0 +1,139 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.PreprocessProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ImagePreprocessorTest {
+
+    private final ImagePreprocessor preprocessor = new ImagePreprocessor(new PreprocessProperties());
+
+    @Test
+    public void threshold() {
+        final BufferedImage image = page(0, 0);
+        final int threshold = ImagePreprocessor.threshold(ImagePreprocessor.Gray.of(image));
+        assertThat(threshold).isBetween(40, 220);
+        assertThat(ImagePreprocessor.threshold(ImagePreprocessor.Gray.of(blank(400, 400)))).isEqualTo(-1);
+    }
+
+    @Test
+    public void lineHeight() {
+        // 12 pixel high lines
+        assertThat(ImagePreprocessor.lineHeight(ImagePreprocessor.Gray.of(page(0, 0)))).isEqualTo(12);
+    }
+
+    @Test
+    public void skew() {
+        for (double degrees : new double[]{-3, -1.5, 0, 2}) {
+            final ImagePreprocessor.Gray gray = ImagePreprocessor.Gray.of(page(degrees, 0));
+            assertThat(ImagePreprocessor.skew(gray, ImagePreprocessor.threshold(gray), 5)).isCloseTo(degrees, within(0.15));
+        }
+    }
+
+    @Test
+    public void levelsCropsAndBinarises() {
+        final BufferedImage image = page(2, 30);
+        final PageClassifier.PageImage prepared = preprocessor.apply(new PageClassifier.PageImage(image, Layout.Placement.page(300)));
+
+        final BufferedImage out = prepared.image();
+        assertThat(out.getType()).isEqualTo(BufferedImage.TYPE_BYTE_GRAY);
+        // the dark border and most of the margin are gone
+        assertThat(out.getWidth()).isLessThan(image.getWidth() - 200);
+        assertThat(out.getHeight()).isLessThan(image.getHeight() - 200);
+        for (int y = 0; y < out.getHeight(); y += 7) {
+            for (int x = 0; x < out.getWidth(); x += 7) {
+                assertThat(out.getRaster().getSample(x, y, 0)).isIn(0, 255);
+            }
+        }
+        // the text is level now
+        final ImagePreprocessor.Gray gray = ImagePreprocessor.Gray.of(out);
+        assertThat(ImagePreprocessor.skew(gray, ImagePreprocessor.threshold(gray), 5)).isCloseTo(0, within(0.15));
+        // and the centre of the output is still the centre of the content on the page
+        final Point2D centre = prepared.placement().transform().transform(new Point2D.Double(out.getWidth() / 2.0, out.getHeight() / 2.0), null);
+        assertThat(centre.getX()).isCloseTo(1000 * 72 / 300.0, within(8.0));
+        assertThat(centre.getY()).isCloseTo(1100 * 72 / 300.0, within(8.0));
+    }
+
+    @Test
+    public void blankImageIsLeftAlone() {
+        final PageClassifier.PageImage page = new PageClassifier.PageImage(blank(300, 300), Layout.Placement.page(300));
+        assertThat(preprocessor.apply(page)).isSameAs(page);
+    }
+
+    @Test
+    public void dpiFollowsTextSize() throws IOException {
+        assertThat(dpi(10)).isBetween(250, 350);
+        assertThat(dpi(20)).isBetween(150, 180);
+        assertThat(dpi(5)).isEqualTo(400);
+    }
+
+    private int dpi(int fontSize) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            final PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, fontSize);
+                content.setLeading(fontSize * 1.2f);
+                content.newLineAtOffset(40, 740);
+                for (int i = 0; i < 600 / fontSize; i++) {
+                    content.showText("The quick brown fox jumps over the lazy dog, line " + i + ".");
+                    content.newLine();
+                }
+                content.endText();
+            }
+            return preprocessor.dpi(document, 0, 300);
+        }
+    }
+
+    /**
+     * A 2000 x 2200 pixel scan: lines of 12 pixel high word blocks around the centre, turned by
+     * {@code degrees}, with a dark border {@code border} pixels wide.
+     */
+    private static BufferedImage page(double degrees, int border) {
+        final BufferedImage image = blank(2000, 2200);
+        final Graphics2D graphics = image.createGraphics();
+        try {
+            final Random random = new Random(7);
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(0, 0, image.getWidth(), border);
+            graphics.fillRect(0, 0, border, image.getHeight());
+            graphics.rotate(Math.toRadians(degrees), 1000, 1100);
+            for (int y = 500; y < 1700; y += 30) {
+                for (int x = 400; x < 1550; ) {
+                    final int width = 20 + random.nextInt(80);
+                    graphics.fillRect(x, y, width, 12);
+                    x += width + 15;
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static BufferedImage blank(int width, int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+}
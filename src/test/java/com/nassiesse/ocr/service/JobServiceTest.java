@@ -0,0 +1,84 @@
+package com.nassiesse.ocr.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nassiesse.ocr.JobProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@SpringBootTest
+class JobServiceTest {
+
+    // the on-disk cache and job store of this context, so results don't carry over between runs or test classes
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("cache.directory", () -> directory.resolve("cache").toString());
+        registry.add("jobs.directory", () -> directory.resolve("jobs").toString());
+    }
+
+    @Autowired
+    JobService service;
+
+    @Autowired
+    JobProperties properties;
+
+    @Test
+    public void deletesExpiredJobs() throws Exception {
+        var job = service.submit(new MockMultipartFile("file", "test.pdf", "application/pdf",
+                getClass().getResourceAsStream("/test.pdf")));
+        for (int i = 0; i < 300 && service.get(job.id()).orElseThrow().status() != JobService.Job.Status.DONE; i++) {
+            Thread.sleep(100);
+        }
+        final Path dir = Path.of(properties.getDirectory(), job.id());
+        assertThat(Files.exists(dir.resolve("result.txt"))).isTrue();
+
+        service.deleteExpired(System.currentTimeMillis());
+        assertThat(service.get(job.id())).isPresent();
+
+        service.deleteExpired(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(properties.getRetentionHours()) + 1);
+        assertThat(service.get(job.id())).isEmpty();
+        assertThat(Files.exists(dir)).isFalse();
+    }
+
+    @Test
+    public void resumeSkipsJobsQueuedSinceStartup() throws Exception {
+        var job = service.submit(new MockMultipartFile("file", "test.pdf", "application/pdf",
+                getClass().getResourceAsStream("/test.pdf")));
+        for (int i = 0; i < 300 && service.get(job.id()).orElseThrow().status() != JobService.Job.Status.DONE; i++) {
+            Thread.sleep(100);
+        }
+        var done = service.get(job.id()).orElseThrow();
+        assertThat(done.status()).isEqualTo(JobService.Job.Status.DONE);
+
+        // what the store holds for a job submitted before readiness, while it's still waiting for a worker
+        Files.writeString(Path.of(properties.getDirectory(), job.id(), "job.json"), new ObjectMapper().writeValueAsString(done.queued()));
+        service.resume();
+        assertThat(service.get(job.id())).contains(done);
+    }
+
+    @Test
+    public void keepsFailedPagesOfJobs() throws Exception {
+        var failed = new OCRService.PageText(1, "", null, OCRService.PageStatus.TIMED_OUT, "Page timed out after 120s");
+        var job = JobService.Job.create(new JobService.Job.Source("test.pdf", null, null)).running(2, 0).pageDone()
+                .done(false, List.of(failed));
+        var mapper = new ObjectMapper();
+        var json = mapper.writeValueAsString(job);
+        assertThat(json).contains("\"pagesDone\":1,\"failedPages\":[{\"index\":1,\"text\":\"\",\"status\":\"timed_out\"")
+                .doesNotContain("truncated");
+        assertThat(mapper.readValue(json, JobService.Job.class)).isEqualTo(job);
+    }
+}
@@ -0,0 +1,41 @@
+package com.nassiesse.ocr.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LanguageDetectorTest {
+
+    private static final List<String> CANDIDATES = List.of("eng", "deu", "fra");
+
+    @Test
+    public void picksLanguageWithMostCommonWords() {
+        assertThat(LanguageDetector.guess("The invoice is due at the end of the month and was sent by mail.", CANDIDATES))
+                .isEqualTo("eng");
+        assertThat(LanguageDetector.guess("Die Rechnung ist am Ende des Monats fällig und wird mit der Post verschickt.", CANDIDATES))
+                .isEqualTo("deu");
+        assertThat(LanguageDetector.guess("La facture est due à la fin du mois et elle est envoyée par la poste.", CANDIDATES))
+                .isEqualTo("fra");
+    }
+
+    @Test
+    public void toleratesMisreadWords() {
+        assertThat(LanguageDetector.guess("D1e Rechnnng ist am Ende des M0nats fällig, und w1rd mit der Post", CANDIDATES))
+                .isEqualTo("deu");
+    }
+
+    @Test
+    public void needsEnoughEvidence() {
+        assertThat(LanguageDetector.guess("Invoice 4711", CANDIDATES)).isNull();
+        assertThat(LanguageDetector.guess("", CANDIDATES)).isNull();
+    }
+
+    @Test
+    public void onlyChoosesCandidates() {
+        assertThat(LanguageDetector.guess("Die Rechnung ist am Ende des Monats fällig und wird mit der Post verschickt.",
+                List.of("eng", "fra"))).isNull();
+        assertThat(LanguageDetector.guess("the and of to in", List.of("xyz", "eng"))).isEqualTo("eng");
+    }
+}
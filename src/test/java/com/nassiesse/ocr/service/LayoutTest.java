@@ -0,0 +1,36 @@
+package com.nassiesse.ocr.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.AffineTransform;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LayoutTest {
+
+    @Test
+    public void placesRenderedPage() {
+        // 300 dpi render, so 25 pixels per 6 points
+        var line = new Layout.Line(300, 600, 1000, 50, 90, List.of(new Layout.Word("word", 300, 600, 250, 50, 80)));
+        var placed = Layout.Placement.page(300).place(List.of(line)).get(0);
+        assertThat(placed).isEqualTo(new Layout.Line(72, 144, 240, 12, 90, List.of(new Layout.Word("word", 72, 144, 60, 12, 80))));
+    }
+
+    @Test
+    public void placesImageOnPage() {
+        // a 1000 pixel wide image drawn 500 points wide, 100 points from the left and 200 from the top
+        var placement = Layout.Placement.of(100, 200, 0.5, 0.5);
+        var word = placement.place(List.of(new Layout.Line(0, 0, 101, 21, 75, List.of(new Layout.Word("a", 0, 0, 101, 21, 75)))))
+                .get(0).words().get(0);
+        // partial points round outwards so the box covers the word
+        assertThat(word).isEqualTo(new Layout.Word("a", 100, 200, 51, 11, 75));
+        assertThat(placement.dpi()).isEqualTo(144);
+    }
+
+    @Test
+    public void keepsResolutionOfTurnedImages() {
+        var turned = Layout.Placement.page(250).then(AffineTransform.getRotateInstance(Math.toRadians(2)));
+        assertThat(turned.dpi()).isEqualTo(250);
+    }
+}
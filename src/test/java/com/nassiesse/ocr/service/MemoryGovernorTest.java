@@ -0,0 +1,83 @@
+package com.nassiesse.ocr.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoryGovernorTest {
+
+    @Test
+    public void lowersDpiWhenShort() throws InterruptedException {
+        var registry = new SimpleMeterRegistry();
+        var governor = new MemoryGovernor(MemoryGovernor.rasterBytes(10, 300) + MemoryGovernor.rasterBytes(10, 250), 200, registry);
+        try (var first = governor.reservation(); var second = governor.reservation()) {
+            assertThat(first.reserve(10, 300, 0)).isEqualTo(300);
+            assertThat(second.reserve(10, 300, 0)).isBetween(240, 250);
+            assertThat(governor.getReserved()).isLessThanOrEqualTo(governor.getBudget());
+        }
+        assertThat(governor.getReserved()).isZero();
+        assertThat(registry.get("ocr.render.lowered").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void waitsBelowMinDpi() throws Exception {
+        var governor = new MemoryGovernor(MemoryGovernor.rasterBytes(10, 300), 200, new SimpleMeterRegistry());
+        var first = governor.reservation();
+        assertThat(first.reserve(10, 300, 0)).isEqualTo(300);
+        try (var second = governor.reservation()) {
+            final CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return second.reserve(10, 300, 0);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertThat(waiting).isNotDone();
+            first.close();
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(300);
+        }
+    }
+
+    @Test
+    public void stopsWaitingAtDeadline() throws InterruptedException {
+        var governor = new MemoryGovernor(MemoryGovernor.rasterBytes(10, 300), 200, new SimpleMeterRegistry());
+        try (var first = governor.reservation(); var second = governor.reservation(); var third = governor.reservation()) {
+            first.reserve(10, 300, 0);
+            assertThatThrownBy(() -> second.reserve(10, 300, 0, PageDeadline.after(Duration.ofMillis(50), () -> false)))
+                    .isInstanceOf(InterruptedIOException.class);
+            final AtomicBoolean stopped = new AtomicBoolean();
+            final CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return third.reserve(10, 300, 0, PageDeadline.after(Duration.ZERO, stopped::get));
+                } catch (InterruptedException | InterruptedIOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            stopped.set(true);
+            assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(CancellationException.class);
+            // the pages that gave up no longer hold up the queue
+            assertThat(governor.getReserved()).isEqualTo(MemoryGovernor.rasterBytes(10, 300));
+        }
+        assertThat(governor.getReserved()).isZero();
+    }
+
+    @Test
+    public void letsOversizedPageThroughWhenIdle() throws InterruptedException {
+        var governor = new MemoryGovernor(1000, 200, new SimpleMeterRegistry());
+        try (var reservation = governor.reservation()) {
+            assertThat(reservation.reserve(10, 300, 500)).isEqualTo(300);
+            assertThat(governor.getReserved()).isEqualTo(MemoryGovernor.rasterBytes(10, 300) + 500);
+        }
+        assertThat(governor.getReserved()).isZero();
+    }
+}
@@ -1,26 +1,57 @@
 package com.nassiesse.ocr.service;
 
+import com.nassiesse.ocr.DocumentProperties;
+import com.nassiesse.ocr.SchedulerProperties;
 import com.nassiesse.ocr.TesseractProperties;
 import net.sourceforge.tess4j.ITesseract;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 @SpringBootTest
 class OCRServiceTest {
 
+    // the on-disk cache and job store of this context, so results don't carry over between runs or test classes
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("cache.directory", () -> directory.resolve("cache").toString());
+        registry.add("jobs.directory", () -> directory.resolve("jobs").toString());
+    }
+
     @Autowired
     OCRService service;
 
     @Autowired
     TesseractProperties properties;
 
+    @Autowired
+    DocumentProperties documentProperties;
+
+    @Autowired
+    SchedulerProperties schedulerProperties;
+
+    @Autowired
+    OcrScheduler scheduler;
+
     @Test
     public void newTesseractInstance() {
         ITesseract instance = OCRService.newTesseractInstance(properties);
@@ -35,6 +66,96 @@ class OCRServiceTest {
         assertThat(data.pageCount()).isEqualTo(1);
     }
 
+    @Test
+    public void extractTextFromMultiPagePDF() throws IOException {
+        final File file = File.createTempFile("multipage", ".pdf");
+        try {
+            try (PDDocument document = fivePages()) {
+                document.save(file);
+            }
+            final OCRService.ExtractedPdfData data = service.extractTextFromPDF(file);
+            assertThat(data.pageCount()).isEqualTo(5);
+            assertThat(data.text()).isEqualTo("Page 0Page 1Page 2Page 3Page 4");
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void extractsOnlyRequestedPages() throws IOException {
+        assertThat(extract(new ExtractionOptions.Limits(PageRange.parse("2,4-"), 0, 0, null)))
+                .isEqualTo(new OCRService.ExtractedPdfData("Page 1Page 3Page 4", 5, false));
+        assertThat(extract(new ExtractionOptions.Limits(null, 5, 0, null)))
+                .isEqualTo(new OCRService.ExtractedPdfData("Page 0Page 1Page 2Page 3Page 4", 5, false));
+    }
+
+    @Test
+    public void stopsAtLimits() throws IOException {
+        assertThat(extract(new ExtractionOptions.Limits(null, 2, 0, null)))
+                .isEqualTo(new OCRService.ExtractedPdfData("Page 0Page 1", 5, true));
+        assertThat(extract(new ExtractionOptions.Limits(PageRange.parse("3-"), 0, 10, null)))
+                .isEqualTo(new OCRService.ExtractedPdfData("Page 2Page 3", 5, true));
+        assertThat(extract(new ExtractionOptions.Limits(null, 0, 0, Duration.ofNanos(1))))
+                .isEqualTo(new OCRService.ExtractedPdfData("", 5, true));
+    }
+
+    @Test
+    public void admitsAPageWindowOfLongDocuments() throws IOException {
+        final int window = schedulerProperties.getPageWindow();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < window + 10; i++) {
+                document.addPage(new PDPage());
+            }
+            document.save(bytes);
+        }
+        try (OCRService.Extraction extraction = service.openPDF(new MockMultipartFile("file", "long.pdf",
+                "application/pdf", bytes.toByteArray()))) {
+            assertThat(extraction.getPageCount()).isEqualTo(window + 10);
+            assertThat(scheduler.getInFlight()).isEqualTo(window);
+        }
+        assertThat(scheduler.getInFlight()).isZero();
+    }
+
+    private OCRService.ExtractedPdfData extract(ExtractionOptions.Limits limits) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PDDocument document = fivePages()) {
+            document.save(bytes);
+        }
+        try (OCRService.Extraction extraction = service.openPDF(new MockMultipartFile("file", "five.pdf",
+                "application/pdf", bytes.toByteArray()), new ExtractionOptions(false, null, null, null, limits))) {
+            return extraction.collect();
+        }
+    }
+
+    private static PDDocument fivePages() throws IOException {
+        final PDDocument document = new PDDocument();
+        for (int i = 0; i < 5; i++) {
+            final PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(72, 720);
+                content.showText("Page " + i);
+                content.endText();
+            }
+        }
+        return document;
+    }
+
+    @Test
+    public void extractTextFromLargeUpload() throws IOException {
+        final long inMemoryMaxBytes = documentProperties.getInMemoryMaxBytes();
+        documentProperties.setInMemoryMaxBytes(0);
+        try (OCRService.Extraction extraction = service.openPDF(
+                new MockMultipartFile("file", "test.pdf", "application/pdf", OCRService.getTestPDFBytes()))) {
+            assertThat(extraction.collect().pageCount()).isEqualTo(1);
+        } finally {
+            documentProperties.setInMemoryMaxBytes(inMemoryMaxBytes);
+        }
+    }
+
     @Test
     public void extractImages() throws IOException {
         var doc = PDDocument.load(OCRService.getTestPDFBytes());
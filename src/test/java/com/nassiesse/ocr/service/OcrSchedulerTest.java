@@ -0,0 +1,75 @@
+package com.nassiesse.ocr.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OcrSchedulerTest {
+
+    @Test
+    public void rejectsWhenFull() {
+        var scheduler = new OcrScheduler(1, 10, new SimpleMeterRegistry());
+        try (var ticket = scheduler.admit(8)) {
+            assertThat(scheduler.getInFlight()).isEqualTo(8);
+            assertThatThrownBy(() -> scheduler.admit(3)).isInstanceOf(SchedulerBusyException.class);
+            scheduler.admit(2).close();
+        } finally {
+            scheduler.destroy();
+        }
+        assertThat(scheduler.getInFlight()).isZero();
+    }
+
+    @Test
+    public void admitsOversizedRequestWhenIdle() {
+        var scheduler = new OcrScheduler(1, 10, new SimpleMeterRegistry());
+        try (var ticket = scheduler.admit(50)) {
+            assertThat(scheduler.getInFlight()).isEqualTo(50);
+        } finally {
+            scheduler.destroy();
+        }
+    }
+
+    @Test
+    public void interleavesRequests() throws InterruptedException {
+        var scheduler = new OcrScheduler(1, 100, new SimpleMeterRegistry());
+        try (var large = scheduler.admit(6); var small = scheduler.admit(1)) {
+            final CountDownLatch gate = new CountDownLatch(1);
+            final List<String> order = new CopyOnWriteArrayList<>();
+            final CompletableFuture<String> blocker = large.submit(() -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return "blocker";
+            });
+            final List<CompletableFuture<String>> pages = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                final String name = "large-" + i;
+                pages.add(large.submit(() -> {
+                    order.add(name);
+                    return name;
+                }));
+            }
+            pages.add(small.submit(() -> {
+                order.add("small");
+                return "small";
+            }));
+            gate.countDown();
+            blocker.join();
+            pages.forEach(CompletableFuture::join);
+            assertThat(order.indexOf("small")).isLessThanOrEqualTo(1);
+            assertThat(scheduler.getQueued()).isZero();
+        } finally {
+            scheduler.destroy();
+        }
+    }
+}
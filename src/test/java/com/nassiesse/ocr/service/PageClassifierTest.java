@@ -0,0 +1,140 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.ClassifierProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class PageClassifierTest {
+
+    private final PageClassifier classifier = new PageClassifier(new ClassifierProperties());
+
+    @Test
+    public void textPage() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            page(document, 700, 40, null, 0, 0);
+            var analysis = classifier.classify(document, 0);
+            assertThat(analysis.strategy()).isEqualTo(PageClassifier.Strategy.TEXT);
+            assertThat(analysis.text()).startsWith("The quick brown fox");
+        }
+    }
+
+    @Test
+    public void stopsAtDeadline() throws IOException, InterruptedException {
+        try (PDDocument document = new PDDocument()) {
+            page(document, 700, 40, null, 0, 0);
+            var expired = PageDeadline.after(Duration.ofMillis(1), () -> false);
+            Thread.sleep(5);
+            assertThatThrownBy(() -> classifier.classify(document, 0, expired)).isInstanceOf(InterruptedIOException.class);
+            var stopped = PageDeadline.after(Duration.ZERO, () -> true);
+            assertThatThrownBy(() -> classifier.classify(document, 0, stopped)).isInstanceOf(CancellationException.class);
+        }
+    }
+
+    @Test
+    public void scannedPageUsesEmbeddedImage() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            // 8.5 x 11 inch at 300 dpi
+            page(document, 0, 0, new BufferedImage(2550, 3300, BufferedImage.TYPE_BYTE_GRAY), 0, 792);
+            var analysis = classifier.classify(document, 0);
+            assertThat(analysis.strategy()).isEqualTo(PageClassifier.Strategy.OCR_IMAGES);
+            assertThat(analysis.text()).isEmpty();
+            assertThat(analysis.imageCoverage()).isGreaterThan(0.99);
+            List<PageClassifier.PageImage> images = classifier.images(document, 0, analysis, 300);
+            assertThat(images).hasSize(1);
+            assertThat(images.get(0).image().getWidth()).isEqualTo(2550);
+            // 72 points per 300 pixels
+            assertThat(images.get(0).placement().transform().getScaleX()).isCloseTo(0.24, within(1e-6));
+            assertThat(images.get(0).placement().transform().getTranslateY()).isCloseTo(0, within(1e-6));
+        }
+    }
+
+    @Test
+    public void lowResolutionImageIsScaled() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            page(document, 0, 0, new BufferedImage(850, 1100, BufferedImage.TYPE_BYTE_GRAY), 0, 792);
+            var analysis = classifier.classify(document, 0);
+            var image = classifier.images(document, 0, analysis, 300).get(0).image();
+            assertThat(image.getWidth()).isEqualTo(2550);
+        }
+    }
+
+    @Test
+    public void mixedPageKeepsTextAndOcrsImage() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            page(document, 750, 3, new BufferedImage(1275, 1200, BufferedImage.TYPE_BYTE_GRAY), 72, 500);
+            var analysis = classifier.classify(document, 0);
+            assertThat(analysis.strategy()).isEqualTo(PageClassifier.Strategy.OCR_IMAGES);
+            assertThat(analysis.text()).startsWith("The quick brown fox");
+            assertThat(analysis.regions()).hasSize(1);
+        }
+    }
+
+    @Test
+    public void imageWithTextLayerIsNotOcred() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            page(document, 700, 40, new BufferedImage(2550, 3300, BufferedImage.TYPE_BYTE_GRAY), 0, 792);
+            assertThat(classifier.classify(document, 0).strategy()).isEqualTo(PageClassifier.Strategy.TEXT);
+        }
+    }
+
+    @Test
+    public void emptyPageIsRendered() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            assertThat(classifier.classify(document, 0).strategy()).isEqualTo(PageClassifier.Strategy.OCR_PAGE);
+        }
+    }
+
+    @Test
+    public void textQuality() {
+        assertThat(PageClassifier.textQuality("The 3rd quick brown fox, jumps over the lazy dog.")).isEqualTo(1.0);
+        assertThat(PageClassifier.textQuality("Tl1e qNick brovvn f0x jUmps")).isLessThan(0.5);
+        assertThat(PageClassifier.textQuality("\uFFFD\uFFFD \uE000\uE001")).isEqualTo(0.0);
+        assertThat(PageClassifier.textQuality("")).isEqualTo(0.0);
+    }
+
+    /**
+     * Add a letter sized page with {@code lines} lines of text from {@code top} downwards, and the
+     * image drawn at its native size in points scaled to fit the page width, with its top left corner at
+     * {@code x}, {@code y}.
+     */
+    private static void page(PDDocument document, float top, int lines, BufferedImage image, float x, float y) throws IOException {
+        final PDPage page = new PDPage();
+        document.addPage(page);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            if (image != null) {
+                final PDImageXObject xObject = LosslessFactory.createFromImage(document, image);
+                final float width = 612 - 2 * x;
+                final float height = width * image.getHeight() / image.getWidth();
+                content.drawImage(xObject, x, y - height, width, height);
+            }
+            if (lines > 0) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 10);
+                content.setLeading(12);
+                content.newLineAtOffset(40, top);
+                for (int i = 0; i < lines; i++) {
+                    content.showText("The quick brown fox jumps over the lazy dog, line " + i + " of the page.");
+                    content.newLine();
+                }
+                content.endText();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.nassiesse.ocr.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.rendering.ImageType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageDeadlineTest {
+
+    @Test
+    public void expires() throws InterruptedException {
+        var deadline = PageDeadline.after(Duration.ofMillis(50), () -> false);
+        assertThat(deadline.isExpired()).isFalse();
+        assertThat(deadline.remainingMillis()).isBetween(0L, 50L);
+        Thread.sleep(60);
+        assertThat(deadline.isTimedOut()).isTrue();
+        assertThat(deadline.isStopped()).isFalse();
+        assertThatThrownBy(deadline::check).isInstanceOf(InterruptedIOException.class);
+
+        var none = PageDeadline.after(Duration.ZERO, () -> false);
+        assertThat(none.isExpired()).isFalse();
+        assertThat(none.remainingMillis()).isEqualTo(Long.MAX_VALUE);
+        assertThatThrownBy(PageDeadline.after(Duration.ZERO, () -> true)::check).isInstanceOf(CancellationException.class);
+    }
+
+    @Test
+    public void stopsRendering() throws IOException, InterruptedException {
+        try (PDDocument document = drawing()) {
+            assertThat(PageDeadline.NONE.renderer(document).renderImageWithDPI(0, 36, ImageType.GRAY)).isNotNull();
+            var live = PageDeadline.after(Duration.ofMinutes(1), () -> false);
+            assertThat(live.renderer(document).renderImageWithDPI(0, 36, ImageType.GRAY)).isNotNull();
+
+            var expired = PageDeadline.after(Duration.ofMillis(1), () -> false);
+            Thread.sleep(5);
+            assertThatThrownBy(() -> expired.renderer(document).renderImageWithDPI(0, 36, ImageType.GRAY))
+                    .isInstanceOf(InterruptedIOException.class);
+            var stopped = PageDeadline.after(Duration.ZERO, () -> true);
+            assertThatThrownBy(() -> stopped.renderer(document).renderImageWithDPI(0, 36, ImageType.GRAY))
+                    .isInstanceOf(CancellationException.class);
+        }
+    }
+
+    private static PDDocument drawing() throws IOException {
+        final PDDocument document = new PDDocument();
+        final PDPage page = new PDPage();
+        document.addPage(page);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            for (int i = 0; i < 100; i++) {
+                content.addRect(10 + i, 10 + i, 100, 100);
+                content.stroke();
+            }
+        }
+        return document;
+    }
+}
@@ -0,0 +1,24 @@
+package com.nassiesse.ocr.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageRangeTest {
+
+    @Test
+    public void parsesPagesAndRanges() {
+        var range = PageRange.parse("1-3, 7,10-");
+        assertThat(IntStream.range(0, 12).filter(range::contains).toArray()).containsExactly(0, 1, 2, 6, 9, 10, 11);
+    }
+
+    @Test
+    public void rejectsInvalidRanges() {
+        for (String spec : new String[]{"", "0", "3-2", "a", "1-b", "-3", "1,,2"}) {
+            assertThatThrownBy(() -> PageRange.parse(spec)).as(spec).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.CacheProperties;
+import com.nassiesse.ocr.ClassifierProperties;
+import com.nassiesse.ocr.PreprocessProperties;
+import com.nassiesse.ocr.TesseractProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private ResultCache cache(long memoryMaxBytes, String language) {
+        return cache(memoryMaxBytes, language, new ClassifierProperties());
+    }
+
+    private ResultCache cache(long memoryMaxBytes, String language, ClassifierProperties classifierProperties) {
+        final CacheProperties properties = new CacheProperties();
+        properties.setDirectory(directory.toString());
+        properties.setMemoryMaxBytes(memoryMaxBytes);
+        final TesseractProperties tesseractProperties = new TesseractProperties();
+        tesseractProperties.setLanguage(language);
+        return new ResultCache(properties, tesseractProperties, new PreprocessProperties(), classifierProperties);
+    }
+
+    @Test
+    public void documentSurvivesRestart() {
+        var key = cache(1024 * 1024, "eng").documentKey("abc");
+        cache(1024 * 1024, "eng").putDocument(key, List.of("one", "two"));
+        assertThat(cache(1024 * 1024, "eng").getDocument(key)).contains(List.of("one", "two"));
+    }
+
+    @Test
+    public void keyDependsOnSettings() {
+        assertThat(cache(1024, "eng").documentKey("abc")).isNotEqualTo(cache(1024, "deu").documentKey("abc"));
+        assertThat(cache(1024, "eng").documentKey("abc")).isEqualTo(cache(1024, "eng").documentKey("abc"));
+        assertThat(cache(1024, "eng").documentKey("abc", "")).isEqualTo(cache(1024, "eng").documentKey("abc"));
+        assertThat(cache(1024, "eng").documentKey("abc", "deu|6|1")).isNotEqualTo(cache(1024, "eng").documentKey("abc"));
+        final ClassifierProperties stricter = new ClassifierProperties();
+        stricter.setMinTextQuality(0.9);
+        assertThat(cache(1024, "eng", stricter).documentKey("abc")).isNotEqualTo(cache(1024, "eng").documentKey("abc"));
+    }
+
+    @Test
+    public void memoryTierIsBounded() {
+        final CacheProperties properties = new CacheProperties();
+        properties.setDirectory("");
+        properties.setMemoryMaxBytes(1000);
+        var cache = new ResultCache(properties, new TesseractProperties(), new PreprocessProperties(), new ClassifierProperties());
+        cache.putPage("a", "x".repeat(300));
+        cache.putPage("b", "y".repeat(300));
+        assertThat(cache.getPage("a")).isEmpty();
+        assertThat(cache.getPage("b")).contains("y".repeat(300));
+    }
+
+    @Test
+    public void s3EntryRequiresSameETag() {
+        var cache = cache(1024 * 1024, "eng");
+        cache.putS3ContentHash("bucket", "key.pdf", "\"etag1\"", "abc");
+        assertThat(cache.getS3ContentHash("bucket", "key.pdf", "\"etag1\"")).contains("abc");
+        assertThat(cache.getS3ContentHash("bucket", "key.pdf", "\"etag2\"")).isEmpty();
+        assertThat(cache.getS3ContentHash("bucket", "other.pdf", "\"etag1\"")).isEmpty();
+    }
+
+    @Test
+    public void pageHashIgnoresSurroundingDocument() throws IOException {
+        try (PDDocument first = document("shared", "first"); PDDocument second = document("other", "shared")) {
+            assertThat(ResultCache.pageHash(first.getPage(0))).isEqualTo(ResultCache.pageHash(second.getPage(1)));
+            assertThat(ResultCache.pageHash(first.getPage(0))).isNotEqualTo(ResultCache.pageHash(first.getPage(1)));
+        }
+    }
+
+    private static PDDocument document(String... texts) throws IOException {
+        final PDDocument document = new PDDocument();
+        for (String text : texts) {
+            final PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(72, 720);
+                content.showText(text);
+                content.endText();
+            }
+        }
+        return document;
+    }
+}
@@ -0,0 +1,109 @@
+package com.nassiesse.ocr.service;
+
+import com.nassiesse.ocr.S3Properties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Downloads from a minimal path style S3 stand-in that serves one object and honours single ranges.
+ */
+class S3TransferTest {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final byte[] object = new byte[1_000_000];
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private S3Transfer transfer;
+
+    @BeforeEach
+    public void start() throws IOException {
+        new Random(42).nextBytes(object);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/bucket/doc.pdf", this::serve);
+        server.start();
+        System.setProperty("aws.accessKeyId", "test");
+        System.setProperty("aws.secretAccessKey", "test");
+
+        final S3Properties properties = new S3Properties();
+        properties.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+        properties.setRegion("us-east-1");
+        properties.setPathStyleAccess(true);
+        properties.setPartSizeBytes(128 * 1024);
+        properties.setTargetThroughputGbps(2.0);
+        transfer = new S3Transfer(properties);
+    }
+
+    @AfterEach
+    public void stop() {
+        transfer.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void downloadsInParallelRanges() throws IOException {
+        final File file = File.createTempFile("pdf", ".pdf");
+        try {
+            transfer.download("bucket", "doc.pdf", transfer.head("bucket", "doc.pdf"), file.toPath());
+            assertThat(Files.readAllBytes(file.toPath())).isEqualTo(object);
+            // 1000000 / 131072 rounded up
+            assertThat(ranges).hasSize(8).allMatch(range -> RANGE.matcher(range).matches());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void partsInFlightFollowTargetThroughput() {
+        final S3Properties properties = new S3Properties();
+        assertThat(properties.getPartsInFlight()).isEqualTo(8);
+        properties.setTargetThroughputGbps(0.1);
+        assertThat(properties.getPartsInFlight()).isEqualTo(1);
+        properties.setTargetThroughputGbps(100);
+        properties.setMaxConnections(16);
+        assertThat(properties.getPartsInFlight()).isEqualTo(16);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("ETag", "\"etag-1\"");
+        exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(object.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        int first = 0;
+        int last = object.length - 1;
+        int status = 200;
+        if (range != null) {
+            ranges.add(range);
+            final Matcher matcher = RANGE.matcher(range);
+            assertThat(matcher.matches()).isTrue();
+            first = Integer.parseInt(matcher.group(1));
+            last = Math.min(object.length - 1, Integer.parseInt(matcher.group(2)));
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + object.length);
+        }
+        exchange.sendResponseHeaders(status, last - first + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(object, first, last - first + 1);
+        }
+    }
+}
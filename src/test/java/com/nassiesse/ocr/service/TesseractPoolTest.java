@@ -0,0 +1,121 @@
+package com.nassiesse.ocr.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TesseractPoolTest {
+
+    private static final TesseractPool.EngineKey ENG = new TesseractPool.EngineKey("/tessdata", "eng", 3);
+    private static final TesseractPool.EngineKey DEU = new TesseractPool.EngineKey("/tessdata", "deu", 3);
+    private static final TesseractPool.EngineKey FRA = new TesseractPool.EngineKey("/tessdata", "fra", 3);
+
+    private static TesseractPool pool(int size, int maxPages) {
+        return new TesseractPool(size, maxPages, 3, key -> key.configure(new PooledTesseract()));
+    }
+
+    @Test
+    public void reusesReturnedEngine() throws InterruptedException {
+        var pool = pool(2, 0);
+        final Object first;
+        try (var lease = pool.acquire(ENG)) {
+            first = lease.engine();
+        }
+        try (var lease = pool.acquire(ENG)) {
+            assertThat(lease.engine()).isSameAs(first);
+        }
+        assertThat(pool.getLive()).isEqualTo(1);
+        assertThat(pool.getIdle()).isEqualTo(1);
+    }
+
+    @Test
+    public void recyclesAfterMaxPages() throws InterruptedException {
+        var pool = pool(1, 2);
+        final Object first;
+        try (var lease = pool.acquire(ENG)) {
+            first = lease.engine();
+        }
+        try (var lease = pool.acquire(ENG)) {
+            assertThat(lease.engine()).isSameAs(first);
+        }
+        try (var lease = pool.acquire(ENG)) {
+            assertThat(lease.engine()).isNotSameAs(first);
+        }
+    }
+
+    @Test
+    public void retiresFailedEngine() throws InterruptedException {
+        var pool = pool(1, 0);
+        final Object first;
+        try (var lease = pool.acquire(ENG)) {
+            first = lease.engine();
+            lease.failed();
+        }
+        assertThat(pool.getLive()).isZero();
+        try (var lease = pool.acquire(ENG)) {
+            assertThat(lease.engine()).isNotSameAs(first);
+        }
+    }
+
+    @Test
+    public void evictsIdleEngineOfOtherKeyAtCapacity() throws InterruptedException {
+        var pool = pool(1, 0);
+        pool.acquire(ENG).close();
+        try (var lease = pool.acquire(DEU)) {
+            assertThat(lease.engine()).isNotNull();
+            assertThat(pool.getLive()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedKeyAtCapacity() throws InterruptedException {
+        var pool = pool(2, 0);
+        pool.acquire(ENG).close();
+        pool.acquire(DEU).close();
+        pool.acquire(ENG).close();
+        pool.acquire(FRA).close();
+        assertThat(pool.getLive()).isEqualTo(2);
+        assertThat(pool.getIdleKeys()).containsExactly(ENG, FRA);
+    }
+
+    @Test
+    public void releasesIdleEnginesBeyondMaxIdleModels() throws InterruptedException {
+        var pool = new TesseractPool(8, 0, 2, key -> key.configure(new PooledTesseract()));
+        pool.acquire(ENG).close();
+        pool.acquire(DEU).close();
+        pool.acquire(FRA).close();
+        assertThat(pool.getIdleKeys()).containsExactly(DEU, FRA);
+        assertThat(pool.getLive()).isEqualTo(2);
+    }
+
+    @Test
+    public void pageSegModeIsPerLease() throws InterruptedException {
+        var pool = pool(1, 0);
+        try (var lease = pool.acquire(ENG, 6)) {
+            assertThat(lease.engine()).isNotNull();
+        }
+        assertThat(pool.getLive()).isEqualTo(1);
+        assertThat(pool.getIdleKeys()).containsExactly(ENG);
+    }
+
+    @Test
+    public void blocksWhenExhausted() throws Exception {
+        var pool = pool(1, 0);
+        var lease = pool.acquire(ENG);
+        var waiting = CompletableFuture.supplyAsync(() -> {
+            try (var other = pool.acquire(ENG)) {
+                return other.engine();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThatThrownBy(() -> waiting.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        lease.close();
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+}